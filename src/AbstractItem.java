@@ -2,10 +2,13 @@ import java.time.LocalDate;
 
 public abstract class AbstractItem {
     protected String name;
+    protected int nameId; // Id of the lower case name in SymbolTable.NAMES
     protected int quantity;
     protected LocalDate expirationDate;
-    protected String section;
+    protected int expiryDay; // expirationDate as an epoch day, worked out once
+    protected int sectionId; // Id of the section in SymbolTable.SECTIONS
     protected boolean perishable;
+    protected volatile long version; // Goes up on every stock change, so planners can skip items that didn't change
     /**
      * Constructs an item.
      * @param name Name of the item
@@ -16,27 +19,46 @@ public abstract class AbstractItem {
      */
 
     public AbstractItem(String name, int quantity, LocalDate expirationDate, String section, boolean perishable) {
+        this(name, quantity, expirationDate, SymbolTable.SECTIONS.intern(section), perishable);
+    }
+
+    /**
+     * Constructs an item whose section is already in the dictionary.
+     * @param sectionId Id of the store section in SymbolTable.SECTIONS
+     */
+    public AbstractItem(String name, int quantity, LocalDate expirationDate, int sectionId, boolean perishable) {
         this.name = name;
+        this.nameId = SymbolTable.NAMES.intern(name.toLowerCase());
         this.quantity = quantity;
         this.expirationDate = expirationDate;
-        this.section = section;
+        this.expiryDay = expirationDate == null ? Integer.MAX_VALUE : (int) expirationDate.toEpochDay();
+        this.sectionId = sectionId;
         this.perishable = perishable;
     }
 
     public String getName() { return name; }
+    public int getNameId() { return nameId; }
     public int getQuantity() { return quantity; }
-    public String getSection() { return section; }
+    public String getSection() { return SymbolTable.SECTIONS.nameOf(sectionId); }
+    public int getSectionId() { return sectionId; }
     public boolean isPerishable() { return perishable; }
     public LocalDate getExpirationDate() { return expirationDate; }
 
-    public void setQuantity(int quantity) { this.quantity = quantity; }
+    public long getVersion() { return version; }
+
+    public void setQuantity(int quantity) { this.quantity = quantity; touch(); }
+
+    /**
+     * Marks the item as changed. Call after any change to its stock.
+     */
+    protected void touch() { version++; }
     /**
      * Checks if the item is expired.
      * @return true if expired
      */
     public boolean isExpired() {
         if (!perishable) return false;
-        return LocalDate.now().isAfter(expirationDate);
+        return StoreClock.today() > expiryDay;
     }
     /**
      * Returns the type of item (defined in subclass).
@@ -49,12 +71,12 @@ public abstract class AbstractItem {
      */
     public String toCSV() {
         String exp = perishable ? expirationDate.toString() : "N/A";
-        return name + "," + quantity + "," + exp + "," + section + "," + perishable;
+        return name + "," + quantity + "," + exp + "," + getSection() + "," + perishable;
     }
 
     @Override
     public String toString() {
         String exp = perishable ? expirationDate.toString() : "N/A";
-        return "Name: " + name + ", Qty: " + quantity + ", Expires: " + exp + ", Section: " + section;
+        return "Name: " + name + ", Qty: " + quantity + ", Expires: " + exp + ", Section: " + getSection();
     }
-}
\ No newline at end of file
+}
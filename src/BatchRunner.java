@@ -0,0 +1,193 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs inventory commands from a script instead of the interactive menus.
+ *
+ * Each line is one command with comma separated fields. Blank lines and
+ * lines starting with # are skipped:
+ * <pre>
+ *     date,2025-05-14                        (pins the store's day so replays expire the same stock)
+ *     login,Andrea
+ *     add,Milk,Dairy,Dairy,12,2025-05-20     (name, category, section, quantity, expiration or N/A)
+ *     adjust,Corn Flakes,-,3                 (name, + or -, value)
+ *     order,3 apples
+ *     expire                                 (drops expired holds and expired stock)
+ *     save,inventory.txt
+ *     load,inventory.txt
+ * </pre>
+ * Commands go through the same Inventory methods the menus use, but without
+ * any prompts or per-command printing, so a script runs as fast as the
+ * inventory can take it. A throughput and latency summary is printed at the end.
+ */
+public class BatchRunner {
+
+    private final Inventory inventory;
+    private final Map<String, LatencyLog> latencies = new LinkedHashMap<>();
+    private String manager; // Manager the commands are credited to, set by "login"
+    private int failures;
+
+    /**
+     * Constructs a runner for the given inventory.
+     */
+    public BatchRunner(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * Runs a script file, or standard input if the file name is "-".
+     */
+    public void runFile(String filename) throws IOException {
+        Reader source = filename.equals("-") ? new InputStreamReader(System.in) : new FileReader(filename);
+        try (BufferedReader reader = new BufferedReader(source)) {
+            run(reader);
+        }
+    }
+
+    /**
+     * Runs every command from a reader and prints the summary.
+     */
+    public void run(BufferedReader reader) throws IOException {
+        long started = System.nanoTime();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] parts = line.split(",");
+            String command = parts[0].trim().toLowerCase();
+            long begin = System.nanoTime();
+            boolean ok;
+            try {
+                ok = execute(command, parts);
+            } catch (ProductNotFound | IOException | RuntimeException e) {
+                // Bad lines (bad numbers, bad dates, ...) are counted and reported but don't stop the run
+                System.out.println("Line " + lineNumber + ": " + e.getMessage());
+                ok = false;
+            }
+            latencies.computeIfAbsent(command, k -> new LatencyLog()).add(System.nanoTime() - begin);
+            if (!ok) failures++;
+        }
+        printSummary(System.nanoTime() - started);
+    }
+
+    /**
+     * Runs one command.
+     * @return true if it did what it asked for
+     */
+    private boolean execute(String command, String[] parts) throws ProductNotFound, IOException {
+        switch (command) {
+            case "date":
+                requireFields(parts, 2);
+                StoreClock.setFixedDate(LocalDate.parse(parts[1].trim()));
+                return true;
+            case "login":
+                requireFields(parts, 2);
+                manager = parts[1].trim();
+                return true;
+            case "add":
+                requireFields(parts, 6);
+                return add(parts[1].trim(), parts[2].trim(), parts[3].trim(), Integer.parseInt(parts[4].trim()), parts[5].trim());
+            case "adjust":
+                requireFields(parts, 4);
+                inventory.updateStock(parts[1].trim(), parts[2].trim(), Integer.parseInt(parts[3].trim()));
+                return true;
+            case "order":
+                requireFields(parts, 2);
+                return inventory.fulfillOrder(parts[1], manager);
+            case "expire":
+                inventory.expireHolds();
+                inventory.removeExpiredStock();
+                return true;
+            case "save":
+                requireFields(parts, 2);
+                inventory.saveInventory(parts[1].trim());
+                return true;
+            case "load":
+                requireFields(parts, 2);
+                inventory.loadInventory(parts[1].trim());
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    // Adds a new product, or restocks it if it already exists
+    private boolean add(String name, String category, String section, int quantity, String expiration) throws ProductNotFound {
+        boolean perishable = !expiration.equalsIgnoreCase("N/A");
+        AbstractItem existing = inventory.getItemByName(name);
+        LocalDate expirationDate = perishable ? LocalDate.parse(expiration) : null;
+        if (existing == null) {
+            inventory.addItem(new Product(name, category, quantity, expirationDate, section, perishable));
+        } else if (perishable) {
+            inventory.addOrUpdatePerishable(name, quantity, expirationDate, section);
+        } else {
+            inventory.updateStock(name, quantity);
+        }
+        if (manager != null) {
+            String creditedSection = existing != null ? existing.getSection() : section;
+            inventory.recordManagerContribution(manager, creditedSection, quantity);
+        }
+        return true;
+    }
+
+    private void requireFields(String[] parts, int count) {
+        if (parts.length < count) {
+            throw new IllegalArgumentException("Expected " + (count - 1) + " field(s) for '" + parts[0].trim() + "'");
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        long total = 0;
+        for (LatencyLog log : latencies.values()) {
+            total += log.size;
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("========== Batch Summary ==========");
+        System.out.printf("Commands: %d (%d failed) in %.3f s%n", total, failures, seconds);
+        System.out.printf("Throughput: %.0f commands/s%n", seconds > 0 ? total / seconds : 0.0);
+        System.out.println("Latency per command (microseconds):");
+        System.out.printf("  %-8s %10s %10s %10s %10s %10s%n", "command", "count", "mean", "p50", "p99", "max");
+        for (Map.Entry<String, LatencyLog> entry : latencies.entrySet()) {
+            LatencyLog log = entry.getValue();
+            long[] sorted = log.sorted();
+            System.out.printf("  %-8s %10d %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(), log.size,
+                    log.totalNanos / 1e3 / log.size, percentile(sorted, 0.50) / 1e3,
+                    percentile(sorted, 0.99) / 1e3, sorted[sorted.length - 1] / 1e3);
+        }
+        System.out.println("===================================");
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    // Growable list of latencies for one kind of command
+    private static class LatencyLog {
+        private long[] nanos = new long[64];
+        private int size;
+        private long totalNanos;
+
+        void add(long value) {
+            if (size == nanos.length) nanos = Arrays.copyOf(nanos, size * 2);
+            nanos[size++] = value;
+            totalNanos += value;
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(nanos, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
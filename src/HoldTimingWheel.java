@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hashed timing wheel that tracks when reservation holds run out.
+ *
+ * Time is cut into ticks and each tick maps to one slot on the wheel.
+ * Scheduling a hold just drops it into the slot for its due tick, and
+ * advancing the wheel only looks at the slots for the ticks that passed,
+ * so we never have to scan every open reservation to find expired ones.
+ */
+public class HoldTimingWheel {
+
+    private final long tickMillis;
+    private final List<List<Reservation>> slots;
+    private final ReentrantLock advanceLock = new ReentrantLock();
+    private volatile long currentTick; // Last tick that has been processed
+
+    /**
+     * Constructs a wheel.
+     * @param tickMillis How long one tick lasts
+     * @param slotCount Number of slots on the wheel
+     * @param startMillis Wall clock time the wheel starts at
+     */
+    public HoldTimingWheel(long tickMillis, int slotCount, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Adds a hold to the slot for the tick it runs out in.
+     * Holds due far in the future just wait in their slot for extra laps.
+     */
+    public void schedule(Reservation reservation) {
+        long dueTick = Math.max(tickOf(reservation.getExpiresAt()), currentTick + 1);
+        List<Reservation> slot = slotFor(dueTick);
+        synchronized (slot) {
+            slot.add(reservation);
+        }
+        // An advance may have swept past the slot while we were adding to it. advance() moves
+        // currentTick before it sweeps, so if we can't see that here the sweep will see the hold.
+        while (currentTick >= dueTick) {
+            synchronized (slot) {
+                if (!slot.remove(reservation)) return; // The sweep already collected it
+            }
+            dueTick = currentTick + 1;
+            slot = slotFor(dueTick);
+            synchronized (slot) {
+                slot.add(reservation);
+            }
+        }
+    }
+
+    /**
+     * Moves the wheel forward to the given time and collects every hold that has run out.
+     * If another thread is already advancing, this returns right away instead of waiting.
+     *
+     * @param nowMillis Current wall clock time
+     * @return the holds that are due (some may already be settled)
+     */
+    public List<Reservation> advance(long nowMillis) {
+        List<Reservation> due = new ArrayList<>();
+        if (!advanceLock.tryLock()) return due;
+        try {
+            long targetTick = tickOf(nowMillis);
+            // One full lap visits every slot, so there's no point going further
+            long firstTick = Math.max(currentTick + 1, targetTick - slots.size() + 1);
+            // Publish the target before sweeping, so schedule() can tell if it added behind us
+            if (targetTick > currentTick) currentTick = targetTick;
+            for (long tick = firstTick; tick <= targetTick; tick++) {
+                List<Reservation> slot = slotFor(tick);
+                synchronized (slot) {
+                    Iterator<Reservation> it = slot.iterator();
+                    while (it.hasNext()) {
+                        Reservation r = it.next();
+                        if (r.getStatus() != Reservation.Status.HELD) {
+                            it.remove(); // Already committed or released, just drop it
+                        } else if (tickOf(r.getExpiresAt()) <= targetTick) {
+                            it.remove();
+                            due.add(r);
+                        }
+                    }
+                }
+            }
+        } finally {
+            advanceLock.unlock();
+        }
+        return due;
+    }
+
+    private long tickOf(long millis) {
+        return (millis + tickMillis - 1) / tickMillis; // Round up so holds never expire early
+    }
+
+    private List<Reservation> slotFor(long tick) {
+        return slots.get((int) (tick % slots.size()));
+    }
+}
@@ -1,6 +1,8 @@
 import java.io.*;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Inventory class manages the store items.
@@ -11,41 +13,170 @@ import java.util.*;
 public class Inventory {
 
     private List<AbstractItem> items; // List of all products in the store
-    private Map<String, AbstractItem> itemMap; // Helps us find products faster
+    private List<AbstractItem> itemsByNameId; // Index is the name's id in SymbolTable.NAMES, helps us find products faster
+    private NavigableMap<String, NavigableMap<String, AbstractItem>> sectionIndex; // Section -> name -> item, both sorted
     private Stack<String> undoStack; // Used for undoing the last stock update
     private Queue<String> orderQueue; // Stores customer orders
-
-    // Keep track of how much each manager has added
-    private Map<String, Integer> managerContributions = new HashMap<>();
+    private ReservationManager reservations = new ReservationManager(); // Stock on hold for orders being picked
+    private StockHistory history = new StockHistory(); // Recent stock movements for trends and forecasting
+    private ReplenishmentPlanner planner = new ReplenishmentPlanner(this); // Works out what to reorder
+    private MutationListener mutationListener; // Hears about every change, in order (used for replication)
+    private List<List<Product>> productsByCategory; // Index is the category's id in SymbolTable.CATEGORIES
+
+    // Versions the report cache checks its entries against. Any change bumps the
+    // global one; item changes also bump their section's and category's.
+    private ReportCache reportCache = new ReportCache(REPORT_CACHE_ENTRIES, REPORT_CACHE_WEIGHT);
+    private final AtomicLong version = new AtomicLong();
+    private volatile AtomicLongArray sectionVersions = new AtomicLongArray(16); // Index is the section id
+    private volatile AtomicLongArray categoryVersions = new AtomicLongArray(16); // Index is the category id
+
+    // Keep track of what each manager adds, removes and fills
+    private ManagerActivity managerActivity = new ManagerActivity();
 
     public static final int LOW_STOCK = 5;
     public static final int OVER_STOCK = 100;
+    public static final String UNASSIGNED_SECTION = "Unassigned"; // Used when a contribution has no section
+    public static final String FILE_HEADER = "#inventory v2"; // First line of files written by saveInventory
+    public static final int DISPLAY_PAGE_SIZE = 200; // Rows rendered per flush when listing the store
+    public static final long ORDER_HOLD_MILLIS = 30_000; // How long an order can hold stock before picking
+    public static final int REPORT_CACHE_ENTRIES = 1024; // Most reports kept in the report cache
+    public static final long REPORT_CACHE_WEIGHT = 8_000_000; // Most rows/characters kept in the report cache
 
     // Constructor
     public Inventory() {
         items = new ArrayList<>();
-        itemMap = new HashMap<>();
+        itemsByNameId = new ArrayList<>();
+        productsByCategory = new ArrayList<>();
+        sectionIndex = new TreeMap<>();
         undoStack = new Stack<>();
         orderQueue = new LinkedList<>();
     }
 
     public void recordManagerContribution(String manager, int quantity) {
-        managerContributions.put(manager, managerContributions.getOrDefault(manager, 0) + quantity);
+        recordManagerContribution(manager, UNASSIGNED_SECTION, quantity);
+    }
+
+    /**
+     * Records units a manager added (or removed, if negative) in a section.
+     */
+    public void recordManagerContribution(String manager, String section, int quantity) {
+        recordManagerContribution(manager, section, quantity, System.currentTimeMillis());
     }
 
+    // Records a contribution that happened at the given time (a replicated one keeps the primary's time)
+    private void recordManagerContribution(String manager, String section, int quantity, long timestampMillis) {
+        if (quantity >= 0) managerActivity.record(manager, section, ManagerActivity.Kind.ADDED, quantity);
+        else managerActivity.record(manager, section, ManagerActivity.Kind.REMOVED, -quantity);
+        history.recordManager(manager, quantity, timestampMillis);
+        version.incrementAndGet();
+        if (mutationListener != null) mutationListener.onMutation(Mutation.contribution(manager, section, quantity));
+    }
+
+    /**
+     * Gets the total units each manager has added.
+     */
     public Map<String, Integer> getManagerContributions() {
-        return managerContributions;
+        ManagerActivity.Snapshot snapshot = managerActivity.snapshotTotals();
+        Map<String, Integer> contributions = new LinkedHashMap<>();
+        for (String manager : snapshot.getManagers()) {
+            contributions.put(manager, (int) snapshot.getTotal(manager, ManagerActivity.Kind.ADDED));
+        }
+        return contributions;
+    }
+
+    /**
+     * Gets the per-manager activity counters.
+     */
+    public ManagerActivity getManagerActivity() {
+        return managerActivity;
     }
 
     public void addItem(AbstractItem item) {
+        indexItem(item);
+        history.recordItem(item.getNameId(), item.getSection(), item.getQuantity(), System.currentTimeMillis());
+        publishState(item, true);
+    }
+
+    /**
+     * Adds an item as stock we already had, without recording it as a stock movement.
+     * Used when loading a saved inventory or a generated catalog.
+     */
+    public void importItem(AbstractItem item) {
+        indexItem(item);
+        publishState(item, false);
+    }
+
+    // Adds an item to the list and the lookups. An item with the same name is replaced everywhere,
+    // so the list and the lookups always hold the same items
+    private void indexItem(AbstractItem item) {
+        int nameId = item.getNameId();
+        while (itemsByNameId.size() <= nameId) {
+            itemsByNameId.add(null);
+        }
+        AbstractItem previous = itemsByNameId.set(nameId, item);
+        if (previous == null) {
+            items.add(item);
+        } else {
+            replaceInList(previous, item);
+            unindexItem(previous);
+        }
+        // The keys are the dictionary's own strings, so the index doesn't copy any
+        sectionIndex.computeIfAbsent(item.getSection(), k -> new TreeMap<>()).put(SymbolTable.NAMES.nameOf(nameId), item);
+        if (item instanceof Product) {
+            int categoryId = ((Product) item).getCategoryId();
+            while (productsByCategory.size() <= categoryId) {
+                productsByCategory.add(new ArrayList<>());
+            }
+            productsByCategory.get(categoryId).add((Product) item);
+        }
+        bumpVersions(item);
+    }
+
+    // Puts the new item where the old one was in the list (by identity, items don't define equals)
+    private void replaceInList(AbstractItem previous, AbstractItem item) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == previous) {
+                items.set(i, item);
+                return;
+            }
+        }
         items.add(item);
-        itemMap.put(item.getName().toLowerCase(), item);
+    }
+
+    // Takes an item that was replaced by a new one with the same name out of the section and category lookups
+    private void unindexItem(AbstractItem item) {
+        NavigableMap<String, AbstractItem> section = sectionIndex.get(item.getSection());
+        if (section != null) {
+            section.remove(SymbolTable.NAMES.nameOf(item.getNameId()), item);
+            if (section.isEmpty()) sectionIndex.remove(item.getSection());
+        }
+        if (item instanceof Product) {
+            productsByCategory.get(((Product) item).getCategoryId()).remove(item);
+        }
+        bumpVersions(item);
+    }
+
+    /**
+     * Gets the items grouped by section, sorted by section and then by name.
+     * Used by InventoryReport to page through the store.
+     */
+    NavigableMap<String, NavigableMap<String, AbstractItem>> getSectionIndex() {
+        return sectionIndex;
+    }
+
+    /**
+     * Gets the history of stock movements.
+     */
+    public StockHistory getStockHistory() {
+        return history;
     }
 
     public void addOrUpdatePerishable(String name, int qty, LocalDate expiration, String section) {
-        AbstractItem existing = itemMap.get(name.toLowerCase());
+        AbstractItem existing = lookup(name);
         if (existing != null && existing instanceof Product && existing.isPerishable()) {
             ((Product) existing).addOrUpdateBatch(qty, expiration);
+            history.recordItem(existing.getNameId(), existing.getSection(), qty, System.currentTimeMillis());
+            itemChanged(existing, true);
         } else {
             addItem(new Product(name, "General", qty, expiration, section, true));
         }
@@ -66,21 +197,102 @@ public class Inventory {
     }
 
     public void updateStock(String name, int newQuantity) throws ProductNotFound {
-        AbstractItem item = itemMap.get(name.toLowerCase());
+        AbstractItem item = lookup(name);
         if (item == null) throw new ProductNotFound("Item " + name + " not found.");
-        if (!item.isPerishable()) item.setQuantity(item.getQuantity() + newQuantity);
+        if (!item.isPerishable()) {
+            // Goes through the product's own lock, so it can't race an order and can't dip into held units
+            if (item instanceof Product && newQuantity >= 0) ((Product) item).addStock(newQuantity);
+            else if (item instanceof Product) ((Product) item).removeStock(-newQuantity);
+            else item.setQuantity(item.getQuantity() + newQuantity);
+            history.recordItem(item.getNameId(), item.getSection(), newQuantity, System.currentTimeMillis());
+            itemChanged(item, true);
+        }
         undoStack.push("Updated " + name + " stock by adding " + newQuantity);
     }
 
     public void updateStock(String name, String operator, int value) throws ProductNotFound {
-        AbstractItem item = itemMap.get(name.toLowerCase());
+        AbstractItem item = lookup(name);
         if (item == null) throw new ProductNotFound("Item " + name + " not found.");
-        if (item instanceof Product) ((Product)item).updateStock(operator, value);
+        if (item instanceof Product) {
+            ((Product)item).updateStock(operator, value);
+            if (!item.isPerishable()) {
+                int delta = operator.equals("+") ? value : operator.equals("-") ? -value : 0;
+                history.recordItem(item.getNameId(), item.getSection(), delta, System.currentTimeMillis());
+                itemChanged(item, true);
+            }
+        }
         undoStack.push("Updated " + name + " stock with operator " + operator + " and value " + value);
     }
 
+    /**
+     * Holds units of a product for an order so nobody else can sell them.
+     * @param name Product name
+     * @param quantity Units to hold
+     * @param ttlMillis How long the hold lasts if it is never committed or released
+     * @return the reservation, or null if there isn't enough available stock
+     * @throws ProductNotFound if no product has that name
+     */
+    public Reservation reserve(String name, int quantity, long ttlMillis) throws ProductNotFound {
+        AbstractItem item = lookup(name);
+        if (!(item instanceof Product)) throw new ProductNotFound("Item " + name + " not found.");
+        Reservation hold = reservations.reserve((Product) item, quantity, ttlMillis);
+        version.incrementAndGet(); // Holds show up in the reorder plan
+        return hold;
+    }
+
+    /**
+     * Sells the units held by a reservation.
+     * @return true if the hold was still open and the stock was taken
+     */
+    public boolean commitReservation(long reservationId) {
+        Reservation hold = reservations.getReservation(reservationId);
+        if (hold == null || !reservations.commit(reservationId)) return false;
+        Product product = hold.getProduct();
+        // Recorded as a sale, so the planner can tell selling from spoilage and adjustments
+        history.recordSale(product.getNameId(), product.getSection(), hold.getQuantity(), System.currentTimeMillis());
+        itemChanged(product, true, hold.getQuantity());
+        return true;
+    }
+
+    /**
+     * Gives the units held by a reservation back to the shelf.
+     * @return true if the hold was still open and is now released
+     */
+    public boolean releaseReservation(long reservationId) {
+        boolean released = reservations.release(reservationId);
+        if (released) version.incrementAndGet();
+        return released;
+    }
+
+    /**
+     * Releases every hold that has run out.
+     * @return number of holds that expired
+     */
+    public int expireHolds() {
+        int expired = reservations.expireHolds(System.currentTimeMillis());
+        if (expired > 0) version.incrementAndGet();
+        return expired;
+    }
+
+    /**
+     * Gets how many units of a product can still be promised (on hand minus holds).
+     */
+    public int getAvailableToPromise(String name) throws ProductNotFound {
+        AbstractItem item = lookup(name);
+        if (item == null) throw new ProductNotFound("Item " + name + " not found.");
+        if (item instanceof Product) return ((Product) item).getAvailableToPromise();
+        return item.getQuantity();
+    }
+
     public AbstractItem getItemByName(String name) {
-        return itemMap.get(name.toLowerCase());
+        return lookup(name);
+    }
+
+    // Finds an item by name through its dictionary id
+    private AbstractItem lookup(String name) {
+        int nameId = SymbolTable.NAMES.idOf(name.toLowerCase());
+        if (nameId < 0 || nameId >= itemsByNameId.size()) return null;
+        return itemsByNameId.get(nameId);
     }
 
     public List<AbstractItem> getAllItems() {
@@ -96,6 +308,183 @@ public class Inventory {
         }
     }
 
+    /**
+     * Works out which products to reorder and how many of each.
+     * Only products whose stock changed since the last call are planned again.
+     */
+    public List<ReplenishmentPlanner.ReorderLine> planReplenishment() {
+        return planner.plan();
+    }
+
+    public ReplenishmentPlanner getReplenishmentPlanner() {
+        return planner;
+    }
+
+    /**
+     * Sets who hears about every change to this inventory (null for nobody).
+     */
+    public void setMutationListener(MutationListener listener) {
+        this.mutationListener = listener;
+    }
+
+    /**
+     * Captures the current state of every item, as if each had just been loaded.
+     * Used to bring a new standby up to date before it follows the live changes.
+     * Can run while another thread changes stock: an item added meanwhile may be
+     * missed, but its own change comes through the listener afterwards.
+     */
+    public List<Mutation> snapshotState() {
+        Object[] current = items.toArray(); // Copied in one go so adds can't break the loop
+        List<Mutation> snapshot = new ArrayList<>(current.length);
+        for (Object item : current) {
+            if (item != null) snapshot.add(Mutation.itemState((AbstractItem) item, false));
+        }
+        return snapshot;
+    }
+
+    private void publishState(AbstractItem item, boolean movement) {
+        publishState(item, movement, 0);
+    }
+
+    // Captures and hands over the state under the item's lock (the same one Product's methods take),
+    // so two threads changing one item can't get their states numbered in the wrong order.
+    // The listener must not lock items itself
+    private void publishState(AbstractItem item, boolean movement, int sold) {
+        if (mutationListener == null) return;
+        synchronized (item) {
+            mutationListener.onMutation(Mutation.itemState(item, movement, sold));
+        }
+    }
+
+    // Call after changing an item's stock: marks the reports that depend on it stale, then tells the listener
+    private void itemChanged(AbstractItem item, boolean movement) {
+        itemChanged(item, movement, 0);
+    }
+
+    private void itemChanged(AbstractItem item, boolean movement, int sold) {
+        bumpVersions(item);
+        publishState(item, movement, sold);
+    }
+
+    private void bumpVersions(AbstractItem item) {
+        sectionVersions = bump(sectionVersions, item.getSectionId());
+        if (item instanceof Product) categoryVersions = bump(categoryVersions, ((Product) item).getCategoryId());
+        version.incrementAndGet();
+    }
+
+    private static AtomicLongArray bump(AtomicLongArray versions, int id) {
+        if (id >= versions.length()) {
+            // New ids only show up when an item is added, so growing is rare
+            AtomicLongArray grown = new AtomicLongArray(Math.max(id + 1, versions.length() * 2));
+            for (int i = 0; i < versions.length(); i++) {
+                grown.set(i, versions.get(i));
+            }
+            versions = grown;
+        }
+        versions.incrementAndGet(id);
+        return versions;
+    }
+
+    private static long versionOf(AtomicLongArray versions, int id) {
+        return id < versions.length() ? versions.get(id) : 0;
+    }
+
+    /**
+     * Gets a number that changes every time anything in the inventory changes
+     * (stock, holds or manager activity). Reports cached against it are stale once it moves.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Gets the cache the reports are served from.
+     */
+    public ReportCache getReportCache() {
+        return reportCache;
+    }
+
+    /**
+     * Drops every item, hold, queued order and recorded activity, as if newly constructed.
+     * Used when a standby starts following a different primary, whose changes
+     * can't be applied on top of the old one's. The listener and planner settings are kept.
+     */
+    void clear() {
+        items = new ArrayList<>();
+        itemsByNameId = new ArrayList<>();
+        productsByCategory = new ArrayList<>();
+        sectionIndex = new TreeMap<>();
+        undoStack.clear();
+        orderQueue.clear();
+        reservations = new ReservationManager();
+        history = new StockHistory();
+        managerActivity = new ManagerActivity();
+        reportCache.clear();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Applies a change that happened on another inventory (the standby side of replication).
+     */
+    void applyMutation(Mutation mutation) {
+        switch (mutation.getType()) {
+            case ITEM_STATE:
+                AbstractItem item = lookup(mutation.getName());
+                int before = item == null ? 0 : item.getQuantity();
+                if (item == null) {
+                    int[] days = mutation.getBatchDays();
+                    // Perishables need a first batch to be built; restoreState replaces it right after
+                    LocalDate firstDate = days.length > 0 ? LocalDate.ofEpochDay(days[0]) : StoreClock.todayDate();
+                    item = new Product(mutation.getName(), mutation.getCategory(), 0, firstDate, mutation.getSection(), mutation.isPerishable());
+                    indexItem(item);
+                }
+                if (item instanceof Product) {
+                    ((Product) item).restoreState(mutation.getQuantity(), mutation.getBatchDays(), mutation.getBatchQuantities());
+                }
+                bumpVersions(item);
+                if (mutation.isMovement()) {
+                    int sold = mutation.getSold();
+                    history.recordItem(item.getNameId(), item.getSection(), item.getQuantity() - before + sold, mutation.getTimestamp());
+                    history.recordSale(item.getNameId(), item.getSection(), sold, mutation.getTimestamp());
+                }
+                break;
+            case CONTRIBUTION:
+                recordManagerContribution(mutation.getName(), mutation.getSection(), mutation.getQuantity(), mutation.getTimestamp());
+                break;
+            case ORDER_FILLED:
+                managerActivity.record(mutation.getName(), mutation.getSection(), ManagerActivity.Kind.REMOVED, mutation.getQuantity());
+                managerActivity.record(mutation.getName(), mutation.getSection(), ManagerActivity.Kind.ORDERS_FILLED, 1);
+                version.incrementAndGet();
+                break;
+        }
+    }
+
+    /**
+     * Works out a checksum of every item's name, section, category and on-hand
+     * stock (batch by batch). Two inventories with the same stock have the same checksum.
+     */
+    public long stateChecksum() {
+        long checksum = 17;
+        for (NavigableMap<String, AbstractItem> section : sectionIndex.values()) {
+            for (AbstractItem item : section.values()) {
+                checksum = checksum * 31 + item.getName().hashCode();
+                checksum = checksum * 31 + item.getSection().hashCode();
+                checksum = checksum * 31 + (item.isPerishable() ? 1 : 0);
+                if (item instanceof Product) {
+                    Product product = (Product) item;
+                    checksum = checksum * 31 + product.getCategory().hashCode();
+                    int[][] batches = product.getBatchState();
+                    for (int i = 0; i < batches[0].length; i++) {
+                        checksum = checksum * 31 + batches[0][i];
+                        checksum = checksum * 31 + batches[1][i];
+                    }
+                }
+                checksum = checksum * 31 + item.getQuantity();
+            }
+        }
+        return checksum;
+    }
+
     public void checkOverStock() {
         System.out.println("Checking for overstock items:");
         for (AbstractItem item : items) {
@@ -111,70 +500,175 @@ public class Inventory {
         return recursiveSearch(name, index + 1);
     }
 
+    /**
+     * Gets the products grouped by category. The result is cached, so it can't be changed;
+     * after a change only the categories it touched are copied again.
+     */
     public Map<String, List<Product>> getProductsGroupedByCategory() {
-        Map<String, List<Product>> grouped = new HashMap<>();
-        for (AbstractItem item : items) {
-            if (item instanceof Product) {
-                Product p = (Product) item;
-                grouped.computeIfAbsent(p.getCategory(), k -> new ArrayList<>()).add(p);
+        return reportCache.getOrCompute("byCategory", null, version.get(), () -> {
+            Map<String, List<Product>> grouped = new HashMap<>();
+            for (int categoryId = 0; categoryId < productsByCategory.size(); categoryId++) {
+                List<Product> products = productsByCategory.get(categoryId);
+                if (products.isEmpty()) continue;
+                grouped.put(SymbolTable.CATEGORIES.nameOf(categoryId), reportCache.getOrCompute("category", categoryId,
+                        versionOf(categoryVersions, categoryId), () -> Collections.unmodifiableList(new ArrayList<>(products)), List::size));
             }
-        }
-        return grouped;
+            return Collections.unmodifiableMap(grouped);
+        }, Map::size);
     }
 
     public void displayItems() {
         System.out.println("Full Store Inventory:");
-        Map<String, List<AbstractItem>> sectionMap = new HashMap<>();
-
-        for (AbstractItem item : items) {
-            sectionMap.computeIfAbsent(item.getSection(), k -> new ArrayList<>()).add(item);
-        }
-
-        for (String section : sectionMap.keySet()) {
-            System.out.println("Section: " + section);
-            int totalQty = 0;
-
-            for (AbstractItem item : sectionMap.get(section)) {
-                System.out.println("  " + item.toString());
-                totalQty += item.getQuantity();
+        // Stream the rows a page at a time instead of building the whole listing first
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        InventoryReport report = new InventoryReport(this, DISPLAY_PAGE_SIZE);
+        int currentSection = -1;
+        int totalQty = 0;
+        for (InventoryReport.Page page = report.firstPage(); page != null; page = report.nextPage(page)) {
+            for (InventoryReport.Row row : page.getRows()) {
+                AbstractItem item = row.getItem();
+                if (item.getSectionId() != currentSection) {
+                    if (currentSection >= 0) {
+                        out.println("Total quantity of products in " + SymbolTable.SECTIONS.nameOf(currentSection) + ": " + totalQty);
+                    }
+                    currentSection = item.getSectionId();
+                    totalQty = 0;
+                    out.println("Section: " + item.getSection());
+                }
+                out.println("  " + item.toString());
+                totalQty += row.getQuantity();
             }
-
-            System.out.println("Total quantity of products in " + section + ": " + totalQty);
+            out.flush();
+        }
+        if (currentSection >= 0) {
+            out.println("Total quantity of products in " + SymbolTable.SECTIONS.nameOf(currentSection) + ": " + totalQty);
         }
 
-        System.out.println("\n--- Manager Product Contributions ---");
-        for (String manager : managerContributions.keySet()) {
-            System.out.println(manager + " added a total of " + managerContributions.get(manager) + " products.");
+        out.println("\n--- Manager Product Contributions ---");
+        ManagerActivity.Snapshot snapshot = managerActivity.snapshotTotals();
+        for (String manager : snapshot.getManagers()) {
+            out.println(manager + " added a total of " + snapshot.getTotal(manager, ManagerActivity.Kind.ADDED) + " products.");
         }
+        out.flush();
     }
 
+    /**
+     * Saves the inventory. The file starts with the section and category
+     * dictionaries, and each row refers to them by id:
+     * <pre>
+     *     #inventory v2
+     *     @section,0,Dairy
+     *     @category,0,Dairy
+     *     Milk,7,2025-05-20,0,true,0
+     * </pre>
+     */
     public void saveInventory(String filename) throws IOException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+            writeFileHeader(writer);
             for (AbstractItem item : items) {
-                writer.write(item.toCSV());
-                writer.newLine();
+                writeItem(writer, item);
             }
         }
     }
 
+    /**
+     * Writes the header line and the section and category dictionaries.
+     * Every section and category the rows use must already be in the dictionaries.
+     * Shared with WorkloadGenerator so generated catalogs use the same format.
+     */
+    static void writeFileHeader(BufferedWriter writer) throws IOException {
+        SymbolTable.CATEGORIES.intern("General"); // Items that aren't products are saved under it
+        writer.write(FILE_HEADER);
+        writer.newLine();
+        writeDictionary(writer, "@section", SymbolTable.SECTIONS);
+        writeDictionary(writer, "@category", SymbolTable.CATEGORIES);
+    }
+
+    /**
+     * Writes one item's rows (one per batch for perishables, so every expiration date survives a reload).
+     */
+    static void writeItem(BufferedWriter writer, AbstractItem item) throws IOException {
+        int categoryId = item instanceof Product ? ((Product) item).getCategoryId() : SymbolTable.CATEGORIES.idOf("General");
+        if (item instanceof Product && item.isPerishable()) {
+            for (ProductBatch batch : ((Product) item).getBatches()) {
+                writeRow(writer, item, batch.getQuantity(), batch.getExpirationDate().toString(), categoryId);
+            }
+        } else {
+            writeRow(writer, item, item.getQuantity(), "N/A", categoryId);
+        }
+    }
+
+    private static void writeDictionary(BufferedWriter writer, String tag, SymbolTable table) throws IOException {
+        for (int id = 0; id < table.size(); id++) {
+            writer.write(tag + "," + id + "," + table.nameOf(id));
+            writer.newLine();
+        }
+    }
+
+    private static void writeRow(BufferedWriter writer, AbstractItem item, int quantity, String expiration, int categoryId) throws IOException {
+        writer.write(item.getName() + "," + quantity + "," + expiration + "," + item.getSectionId() + "," + item.isPerishable() + "," + categoryId);
+        writer.newLine();
+    }
+
+    /**
+     * Loads an inventory file. Reads both the dictionary format written by
+     * saveInventory and the older plain rows (name,qty,exp,section,perishable).
+     */
     public void loadInventory(String filename) throws IOException {
         File file = new File(filename);
         if (!file.exists()) return;
+        // Ids in the file mapped to our dictionary ids
+        List<Integer> sectionIds = new ArrayList<>();
+        List<Integer> categoryIds = new ArrayList<>();
+        int general = SymbolTable.CATEGORIES.intern("General");
+        BitSet loaded = new BitSet(); // Name ids of the items this file has added so far
         try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
             String line;
             while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                if (line.startsWith("@")) {
+                    String[] entry = line.split(",", 3);
+                    if (entry.length == 3) {
+                        boolean isSection = entry[0].equals("@section");
+                        List<Integer> ids = isSection ? sectionIds : categoryIds;
+                        int fileId = Integer.parseInt(entry[1]);
+                        while (ids.size() <= fileId) {
+                            ids.add(-1);
+                        }
+                        ids.set(fileId, (isSection ? SymbolTable.SECTIONS : SymbolTable.CATEGORIES).intern(entry[2]));
+                    }
+                    continue;
+                }
                 String[] parts = line.split(",");
-                if (parts.length == 5) {
+                if (parts.length == 5 || parts.length == 6) {
                     String name = parts[0];
                     int quantity = Integer.parseInt(parts[1]);
                     String expStr = parts[2];
-                    String section = parts[3];
                     boolean perishable = Boolean.parseBoolean(parts[4]);
                     LocalDate expirationDate = perishable ? LocalDate.parse(expStr) : null;
 
-                    // FIX: using "General" as the default category
-                    AbstractItem item = new Product(name, "General", quantity, expirationDate, section, perishable);
-                    addItem(item);
+                    // Extra rows for a perishable this file already added are more batches of it.
+                    // Items from before the load are replaced, same as non-perishables
+                    AbstractItem existing = lookup(name);
+                    if (perishable && existing instanceof Product && existing.isPerishable() && loaded.get(existing.getNameId())) {
+                        ((Product) existing).addOrUpdateBatch(quantity, expirationDate);
+                        itemChanged(existing, false);
+                        continue;
+                    }
+
+                    int sectionId;
+                    int categoryId;
+                    if (parts.length == 6) {
+                        sectionId = sectionIds.get(Integer.parseInt(parts[3]));
+                        categoryId = categoryIds.get(Integer.parseInt(parts[5]));
+                    } else {
+                        // Old files have the section spelled out and no category, so use "General"
+                        sectionId = SymbolTable.SECTIONS.intern(parts[3]);
+                        categoryId = general;
+                    }
+                    Product product = new Product(name, categoryId, quantity, expirationDate, sectionId, perishable);
+                    importItem(product);
+                    loaded.set(product.getNameId());
                 }
             }
         }
@@ -184,65 +678,112 @@ public class Inventory {
         orderQueue.offer(order);
     }
     public void processOrders() {
+        processOrders(null);
+    }
+
+    /**
+     * Processes all queued orders and credits the filled ones to a manager.
+     * @param manager Manager filling the orders, or null to not credit anyone
+     */
+    public void processOrders(String manager) {
         System.out.println("Processing orders:");
         while (!orderQueue.isEmpty()) {
-            String order = orderQueue.poll();
-            String[] parts = order.trim().split(" ");
+            fulfillOrder(orderQueue.poll(), manager, true);
+        }
+    }
 
-            if (parts.length < 2) {
-                System.out.println("❌ Invalid order format. Use format like '3 apples'");
-                continue;
-            }
+    /**
+     * Fills a single order like "3 apples" right away, without printing anything.
+     * @param order Order text: quantity then product name
+     * @param manager Manager filling the order, or null to not credit anyone
+     * @return true if the units were sold
+     */
+    public boolean fulfillOrder(String order, String manager) {
+        return fulfillOrder(order, manager, false);
+    }
 
-            int quantity;
-            try {
-                quantity = Integer.parseInt(parts[0]);
-            } catch (NumberFormatException e) {
-                System.out.println("❌ Invalid quantity in order: " + order);
-                continue;
-            }
+    private boolean fulfillOrder(String order, String manager, boolean verbose) {
+        String[] parts = order.trim().split(" ");
 
-            // Reconstruct product name (handles multi-word names like "apple juice")
-            StringBuilder nameBuilder = new StringBuilder();
-            for (int i = 1; i < parts.length; i++) {
-                nameBuilder.append(parts[i]).append(" ");
-            }
-            String rawName = nameBuilder.toString().trim();
+        if (parts.length < 2) {
+            if (verbose) System.out.println("❌ Invalid order format. Use format like '3 apples'");
+            return false;
+        }
 
-            // Try both singular and plural matches
-            AbstractItem item = getItemByName(rawName);
-            if (item == null && rawName.endsWith("s")) {
-                item = getItemByName(rawName.substring(0, rawName.length() - 1));
-            }
+        int quantity;
+        try {
+            quantity = Integer.parseInt(parts[0]);
+        } catch (NumberFormatException e) {
+            if (verbose) System.out.println("❌ Invalid quantity in order: " + order);
+            return false;
+        }
 
-            if (item == null) {
-                System.out.println(" Product not found: " + rawName);
-                continue;
-            }
+        // Reconstruct product name (handles multi-word names like "apple juice")
+        StringBuilder nameBuilder = new StringBuilder();
+        for (int i = 1; i < parts.length; i++) {
+            nameBuilder.append(parts[i]).append(" ");
+        }
+        String rawName = nameBuilder.toString().trim();
 
-            if (item.getQuantity() < quantity) {
-                System.out.println(" Not enough stock to fulfill order for: " + rawName + " (Requested: " + quantity + ", Available: " + item.getQuantity() + ")");
-                continue;
-            }
+        // Try both singular and plural matches
+        AbstractItem item = getItemByName(rawName);
+        if (item == null && rawName.endsWith("s")) {
+            item = getItemByName(rawName.substring(0, rawName.length() - 1));
+        }
 
-            if (item instanceof Product) {
-                Product product = (Product) item;
-                try {
-                    for (int i = 0; i < quantity; i++) {
-                        product.removeStock(1);
-                    }
-                    System.out.println(" Sold " + quantity + " unit(s) of " + product.getName() + " (Remaining: " + product.getQuantity() + ")");
-                } catch (IllegalArgumentException e) {
-                    System.out.println(" Error processing order for: " + rawName);
+        if (item == null) {
+            if (verbose) System.out.println(" Product not found: " + rawName);
+            return false;
+        }
+
+        if (!(item instanceof Product)) {
+            if (verbose) System.out.println(" Cannot process non-product item.");
+            return false;
+        }
+
+        // Reserve first so the stock check and the deduction can't be split by another order
+        Product product = (Product) item;
+        Reservation hold = reservations.reserve(product, quantity, ORDER_HOLD_MILLIS);
+        if (hold == null) {
+            if (verbose) System.out.println(" Not enough stock to fulfill order for: " + rawName + " (Requested: " + quantity + ", Available: " + product.getAvailableToPromise() + ")");
+            return false;
+        }
+
+        if (!commitReservation(hold.getId())) {
+            if (verbose) System.out.println(" Error processing order for: " + rawName);
+            return false;
+        }
+        if (manager != null) {
+            managerActivity.record(manager, product.getSection(), ManagerActivity.Kind.REMOVED, quantity);
+            managerActivity.record(manager, product.getSection(), ManagerActivity.Kind.ORDERS_FILLED, 1);
+            version.incrementAndGet();
+            if (mutationListener != null) mutationListener.onMutation(Mutation.orderFilled(manager, product.getSection(), quantity));
+        }
+        if (verbose) System.out.println(" Sold " + quantity + " unit(s) of " + product.getName() + " (Remaining: " + product.getQuantity() + ")");
+        return true;
+    }
+
+    /**
+     * Throws away every unit in a batch that is past its expiration date.
+     * Units that are on hold stay until their order is settled.
+     * @return number of units removed
+     */
+    public int removeExpiredStock() {
+        int today = StoreClock.today();
+        int removed = 0;
+        for (AbstractItem item : items) {
+            if (item instanceof Product && item.isPerishable()) {
+                int units = ((Product) item).removeExpiredUnits(today);
+                if (units > 0) {
+                    history.recordItem(item.getNameId(), item.getSection(), -units, System.currentTimeMillis());
+                    itemChanged(item, true);
+                    removed += units;
                 }
-            } else {
-                System.out.println(" Cannot process non-product item.");
             }
         }
+        return removed;
     }
 
-
-
     public void undoLastUpdate() {
         if (!undoStack.isEmpty()) {
             String lastAction = undoStack.pop();
@@ -253,32 +794,74 @@ public class Inventory {
     }
 
     public void checkExpiringItems() {
-        LocalDate today = LocalDate.now();
-        LocalDate weekLater = today.plusDays(7);
         System.out.println("Alert: Perishable items expiring within the next 7 days:");
-        boolean found = false;
-        for (AbstractItem item : items) {
+        String report = getExpiringItemsReport();
+        if (report.isEmpty()) {
+            System.out.println("  No perishable items expiring within the next 7 days.");
+        } else {
+            System.out.print(report);
+        }
+    }
+
+    /**
+     * Gets one line per batch expiring within the next 7 days, by section and then name,
+     * or an empty string if there are none. Cached per section for the current day.
+     */
+    public String getExpiringItemsReport() {
+        int today = StoreClock.today();
+        return reportCache.getOrCompute("expiring", today, version.get(), () -> {
+            StringBuilder report = new StringBuilder();
+            for (NavigableMap<String, AbstractItem> section : sectionIndex.values()) {
+                int sectionId = section.firstEntry().getValue().getSectionId();
+                report.append(reportCache.getOrCompute("expiringInSection", Arrays.asList(sectionId, today),
+                        versionOf(sectionVersions, sectionId), () -> expiringInSection(section.values(), today), String::length));
+            }
+            return report.toString();
+        }, String::length);
+    }
+
+    private static String expiringInSection(Collection<AbstractItem> section, int today) {
+        int weekLater = today + 7;
+        StringBuilder lines = new StringBuilder();
+        for (AbstractItem item : section) {
             if (item.isPerishable() && item instanceof Product) {
-                for (ProductBatch batch : ((Product) item).getBatches()) {
-                    if (!today.isAfter(batch.getExpirationDate()) && batch.getExpirationDate().isBefore(weekLater.plusDays(1))) {
-                        System.out.println("  " + item.getName() + " (Section: " + item.getSection() + ") - Expires on " + batch.getExpirationDate() + " (Qty: " + batch.getQuantity() + ")");
-                        found = true;
+                Product product = (Product) item;
+                // The cached first and last expiry tell us if any batch can be in the window
+                if (product.getEarliestExpiryDay() > weekLater || product.getLatestExpiryDay() < today) continue;
+                for (ProductBatch batch : product.getBatches()) {
+                    if (!batch.isExpired(today) && batch.getExpiryDay() <= weekLater) {
+                        lines.append("  ").append(item.getName()).append(" (Section: ").append(item.getSection()).append(") - Expires on ")
+                                .append(batch.getExpirationDate()).append(" (Qty: ").append(batch.getQuantity()).append(")\n");
                     }
                 }
             }
         }
-        if (!found) {
-            System.out.println("  No perishable items expiring within the next 7 days.");
-        }
+        return lines.toString();
     }
 
     public int getTotalItemCount() {
         return items.size();
     }
 
+    /**
+     * Counts the items below LOW_STOCK. Cached per section, so after a change
+     * only the sections that changed are counted again.
+     */
     public int getLowStockCount() {
+        return reportCache.getOrCompute("lowStock", null, version.get(), () -> {
+            int count = 0;
+            for (NavigableMap<String, AbstractItem> section : sectionIndex.values()) {
+                int sectionId = section.firstEntry().getValue().getSectionId();
+                count += reportCache.getOrCompute("lowStockInSection", sectionId, versionOf(sectionVersions, sectionId),
+                        () -> countLowStock(section.values()), c -> 1);
+            }
+            return count;
+        }, c -> 1);
+    }
+
+    private static int countLowStock(Collection<AbstractItem> section) {
         int count = 0;
-        for (AbstractItem item : items) {
+        for (AbstractItem item : section) {
             if (item.getQuantity() < LOW_STOCK) {
                 count++;
             }
@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.function.Predicate;
+
+/**
+ * A paged view of the inventory, walked section by section and name by name.
+ *
+ * Each page picks up right after the last row of the previous one, using the
+ * inventory's section index, so getting a page only touches the rows on it.
+ * Quantities are worked out for the rows on the page and nothing else. That
+ * keeps memory and the wait for the first row the same for nine products or
+ * ten million.
+ *
+ * Example:
+ * <pre>
+ *     InventoryReport report = new InventoryReport(inventory, 20);
+ *     report.setFilter(InventoryReport.lowStock(Inventory.LOW_STOCK));
+ *     InventoryReport.Page page = report.firstPage();
+ * </pre>
+ */
+public class InventoryReport {
+
+    /**
+     * Order the rows come out in.
+     */
+    public enum SortOrder { SECTION_THEN_NAME, SECTION_THEN_NAME_DESCENDING }
+
+    private final Inventory inventory;
+    private final int pageSize;
+    private String section; // Only show this section, or null for all of them
+    private Predicate<AbstractItem> filter = item -> true;
+    private SortOrder sortOrder = SortOrder.SECTION_THEN_NAME;
+
+    /**
+     * Constructs a report.
+     * @param inventory Inventory to report on
+     * @param pageSize Number of rows per page
+     */
+    public InventoryReport(Inventory inventory, int pageSize) {
+        this.inventory = inventory;
+        this.pageSize = pageSize;
+    }
+
+    public void setSection(String section) { this.section = section; }
+    public void setFilter(Predicate<AbstractItem> filter) { this.filter = filter; }
+    public void setSortOrder(SortOrder sortOrder) { this.sortOrder = sortOrder; }
+
+    /**
+     * Filter that keeps items below a stock level.
+     */
+    public static Predicate<AbstractItem> lowStock(int threshold) {
+        return item -> item.getQuantity() < threshold;
+    }
+
+    /**
+     * Filter that keeps perishable items only.
+     */
+    public static Predicate<AbstractItem> perishableOnly() {
+        return AbstractItem::isPerishable;
+    }
+
+    /**
+     * Gets the first page of rows.
+     */
+    public Page firstPage() {
+        return fetch(null, null);
+    }
+
+    /**
+     * Gets the page after the given one.
+     * @return the next page, or null if the given page was the last
+     */
+    public Page nextPage(Page page) {
+        if (!page.hasNext()) return null;
+        return fetch(page.lastSection, page.lastKey);
+    }
+
+    /**
+     * Writes every row of the report, one page at a time. Each page is
+     * flushed as soon as it is ready, so the first rows show up right away.
+     */
+    public void render(Writer out) throws IOException {
+        Page page = firstPage();
+        String currentSection = null;
+        while (page != null) {
+            for (Row row : page.getRows()) {
+                if (!row.getItem().getSection().equals(currentSection)) {
+                    currentSection = row.getItem().getSection();
+                    out.write("Section: " + currentSection + System.lineSeparator());
+                }
+                out.write("  " + row + System.lineSeparator());
+            }
+            out.flush();
+            page = nextPage(page);
+        }
+    }
+
+    // Collects up to pageSize rows that come after (lastSection, lastKey)
+    private Page fetch(String lastSection, String lastKey) {
+        NavigableMap<String, NavigableMap<String, AbstractItem>> sections = inventory.getSectionIndex();
+        boolean descending = sortOrder == SortOrder.SECTION_THEN_NAME_DESCENDING;
+        if (descending) sections = sections.descendingMap();
+        if (section != null) {
+            sections = sections.subMap(section, true, section, true);
+        }
+        if (lastSection != null) {
+            sections = sections.tailMap(lastSection, true);
+        }
+
+        List<Row> rows = new ArrayList<>(pageSize);
+        String pageSection = null;
+        String pageKey = null;
+        for (Map.Entry<String, NavigableMap<String, AbstractItem>> entry : sections.entrySet()) {
+            NavigableMap<String, AbstractItem> names = descending ? entry.getValue().descendingMap() : entry.getValue();
+            if (entry.getKey().equals(lastSection)) {
+                names = names.tailMap(lastKey, false);
+            }
+            for (Map.Entry<String, AbstractItem> named : names.entrySet()) {
+                if (!filter.test(named.getValue())) continue;
+                if (rows.size() == pageSize) {
+                    // Found one more matching row, so there is a next page
+                    return new Page(rows, pageSection, pageKey, true);
+                }
+                rows.add(new Row(named.getValue()));
+                pageSection = entry.getKey();
+                pageKey = named.getKey();
+            }
+        }
+        return new Page(rows, pageSection, pageKey, false);
+    }
+
+    /**
+     * One page of rows plus where the next page starts.
+     */
+    public static class Page {
+        private final List<Row> rows;
+        private final String lastSection;
+        private final String lastKey;
+        private final boolean hasNext;
+
+        private Page(List<Row> rows, String lastSection, String lastKey, boolean hasNext) {
+            this.rows = rows;
+            this.lastSection = lastSection;
+            this.lastKey = lastKey;
+            this.hasNext = hasNext;
+        }
+
+        public List<Row> getRows() { return rows; }
+        public boolean hasNext() { return hasNext; }
+        public boolean isEmpty() { return rows.isEmpty(); }
+    }
+
+    /**
+     * One item on a page, with its quantity worked out when the page was built.
+     */
+    public static class Row {
+        private final AbstractItem item;
+        private final int quantity;
+
+        private Row(AbstractItem item) {
+            this.item = item;
+            this.quantity = item.getQuantity();
+        }
+
+        public AbstractItem getItem() { return item; }
+        public int getQuantity() { return quantity; }
+
+        @Override
+        public String toString() {
+            return item.getName() + " (Qty: " + quantity + ")";
+        }
+    }
+}
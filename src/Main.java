@@ -4,7 +4,29 @@ import java.util.*;
 import java.io.IOException;
 
 public class Main {
+    public static final int UPDATE_PAGE_SIZE = 20; // Products listed per page when picking one to update
+    public static final int GM_REPORT_REORDER_LINES = 10; // Reorder suggestions shown in the GM report
+    public static final long REPLICATION_CHECK_TIMEOUT_MILLIS = 30_000; // How long the standby gets to catch up
+
     public static void main(String[] args) {
+        // Headless mode: java Main --batch <script file, or - for stdin>
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            runBatch(args[1]);
+            return;
+        }
+        // Test data: java Main --generate <products> <commands> <seed> <catalog file> <script file> [base date YYYY-MM-DD]
+        // Pass the base date to get the same files on any day; without it expiry dates are counted from today
+        if (args.length >= 6 && args[0].equals("--generate")) {
+            LocalDate baseDate = args.length >= 7 ? LocalDate.parse(args[6]) : StoreClock.todayDate();
+            generateWorkload(Integer.parseInt(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]), args[4], args[5], baseDate);
+            return;
+        }
+        // Replication self-check: java Main --replication-check <products> <commands> <seed>
+        if (args.length >= 4 && args[0].equals("--replication-check")) {
+            checkReplication(Integer.parseInt(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]));
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         Inventory inventory = new Inventory();
         Warehouse<AbstractItem> warehouse = new Warehouse<>();
@@ -148,33 +170,44 @@ public class Main {
                         Product newProduct = new Product(name, category, quantity, expirationDate, section, perishable);
                         inventory.addItem(newProduct);
                         warehouse.addItem(newProduct);
-                        inventory.recordManagerContribution(manager, quantity);
+                        inventory.recordManagerContribution(manager, section, quantity);
                         System.out.println("[" + LocalDateTime.now() + "] Manager " + manager + " added " + quantity + " units of " + name + " to " + section + " Section.");
                         break;
                     case 2:
-                        List<AbstractItem> productList = inventory.getAllItems();
-                        if (productList.isEmpty()) {
+                        InventoryReport report = new InventoryReport(inventory, UPDATE_PAGE_SIZE);
+                        InventoryReport.Page page = report.firstPage();
+                        if (page.isEmpty()) {
                             System.out.println("No products available to update.");
                             break;
                         }
-                        System.out.println("Select a product to update:");
-                        for (int i = 0; i < productList.size(); i++) {
-                            AbstractItem item = productList.get(i);
-                            System.out.println((i + 1) + ". " + item.getName() + " (Qty: " + item.getQuantity() + ")");
-                        }
-                        System.out.print("Enter the product number: ");
-                        int prodChoice;
-                        try {
-                            prodChoice = Integer.parseInt(scanner.nextLine());
-                        } catch (NumberFormatException e) {
-                            System.out.println("Invalid selection.");
-                            break;
-                        }
-                        if (prodChoice < 1 || prodChoice > productList.size()) {
-                            System.out.println("Invalid selection.");
-                            break;
+                        AbstractItem product = null;
+                        while (product == null) {
+                            System.out.println("Select a product to update:");
+                            List<InventoryReport.Row> rows = page.getRows();
+                            for (int i = 0; i < rows.size(); i++) {
+                                InventoryReport.Row row = rows.get(i);
+                                System.out.println((i + 1) + ". " + row.getItem().getName() + " (Qty: " + row.getQuantity() + ")");
+                            }
+                            System.out.print(page.hasNext() ? "Enter the product number (or 'n' for the next page): " : "Enter the product number: ");
+                            String input = scanner.nextLine().trim();
+                            if (input.equalsIgnoreCase("n") && page.hasNext()) {
+                                page = report.nextPage(page);
+                                continue;
+                            }
+                            int prodChoice;
+                            try {
+                                prodChoice = Integer.parseInt(input);
+                            } catch (NumberFormatException e) {
+                                System.out.println("Invalid selection.");
+                                break;
+                            }
+                            if (prodChoice < 1 || prodChoice > rows.size()) {
+                                System.out.println("Invalid selection.");
+                                break;
+                            }
+                            product = rows.get(prodChoice - 1).getItem();
                         }
-                        AbstractItem product = productList.get(prodChoice - 1);
+                        if (product == null) break;
                         System.out.println("Before update: " + product.toString());
                         System.out.print("Enter quantity to add: ");
                         int addedQuantity;
@@ -186,9 +219,10 @@ public class Main {
                         }
                         try {
                             inventory.updateStock(product.getName(), addedQuantity);
-                            inventory.recordManagerContribution(manager, addedQuantity);
+                            inventory.recordManagerContribution(manager, product.getSection(), addedQuantity);
                             System.out.println("Successfully added " + addedQuantity + " units to " + product.getName() + ".");
-                        } catch (ProductNotFound e) {
+                        } catch (ProductNotFound | IllegalArgumentException e) {
+                            // Taking away more than is available (or on hold) is rejected, nothing was changed
                             System.out.println(e.getMessage());
                             break;
                         }
@@ -202,7 +236,7 @@ public class Main {
                         System.out.print("Enter order details: ");
                         String order = scanner.nextLine();
                         inventory.addOrder(order);
-                        inventory.processOrders();
+                        inventory.processOrders(manager);
                         break;
                     case 5:
                         inventory.undoLastUpdate();
@@ -214,16 +248,92 @@ public class Main {
         }
     }
 
+    /**
+     * Runs a command script against a fresh inventory with no prompts.
+     * @param filename Script to run, or "-" to read commands from standard input
+     */
+    public static void runBatch(String filename) {
+        try {
+            new BatchRunner(new Inventory()).runFile(filename);
+        } catch (IOException e) {
+            System.out.println("Error running batch script: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a generated catalog and a matching traffic script for --batch to replay.
+     * @param baseDate Day the expiry dates are counted from (the script pins the store to it)
+     */
+    public static void generateWorkload(int products, long commands, long seed, String catalogFile, String scriptFile, LocalDate baseDate) {
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setProductCount(products);
+        generator.setToday(baseDate);
+        try {
+            generator.writeCatalog(catalogFile);
+            generator.writeTrafficScript(scriptFile, catalogFile, commands, "Andrea");
+            System.out.println("Wrote " + products + " products to " + catalogFile + " and " + commands + " commands to " + scriptFile);
+        } catch (IOException e) {
+            System.out.println("Error writing workload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a primary and a standby over the loopback socket inside this process,
+     * drives generated traffic through the primary, then checks that the standby
+     * ended up with exactly the same stock.
+     */
+    public static void checkReplication(int products, long commands, long seed) {
+        try {
+            Inventory primaryInventory = new Inventory();
+            ReplicationPrimary primary = new ReplicationPrimary(primaryInventory, 0);
+            primary.start();
+            ReplicationStandby standby = new ReplicationStandby(new Inventory());
+            standby.connect(primary.getPort());
+
+            WorkloadGenerator generator = new WorkloadGenerator(seed);
+            generator.setProductCount(products);
+            long started = System.currentTimeMillis();
+            generator.populate(primaryInventory);
+            generator.runTraffic(primaryInventory, commands, "Andrea");
+            primaryInventory.removeExpiredStock();
+            System.out.println("Primary done: " + primary.getLastSequence() + " changes in "
+                    + (System.currentTimeMillis() - started) + " ms, standby behind by " + primary.getLagMutations());
+
+            long deadline = System.currentTimeMillis() + REPLICATION_CHECK_TIMEOUT_MILLIS;
+            while (primary.getLagMutations() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            System.out.println("Standby caught up to change " + standby.getAppliedSequence()
+                    + " (last change arrived " + standby.getLagMillis() + " ms after it was made)");
+
+            long primaryChecksum = primaryInventory.stateChecksum();
+            long standbyChecksum = standby.read(Inventory::stateChecksum);
+            boolean sameContributions = primaryInventory.getManagerContributions().equals(standby.read(Inventory::getManagerContributions));
+            if (primaryChecksum == standbyChecksum && sameContributions) {
+                System.out.println("Replication check passed: standby matches primary.");
+            } else {
+                System.out.println("Replication check FAILED: primary " + primaryChecksum + ", standby " + standbyChecksum
+                        + ", contributions match: " + sameContributions);
+            }
+            standby.promote();
+            primary.stop();
+        } catch (IOException | ProductNotFound e) {
+            System.out.println("Replication check error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public static void printBanner() {
         System.out.println("========================================");
         System.out.println("  Welcome to Team4$ SuperMinimarket  ");
         System.out.println("========================================");
-        System.out.println("Today's Date: " + LocalDate.now());
+        System.out.println("Today's Date: " + StoreClock.todayDate());
     }
 
     public static List<LocalDate> generateAllowedDates() {
         List<LocalDate> allowedDates = new ArrayList<>();
-        LocalDate startDate = LocalDate.now().plusDays(21);
+        LocalDate startDate = StoreClock.todayDate().plusDays(21);
         for (int i = 0; i < 7; i++) {
             allowedDates.add(startDate.plusDays(i));
         }
@@ -231,12 +341,36 @@ public class Main {
     }
 
     public static void displayPrivateGMInfo(Inventory inventory) {
-        System.out.println("========== GM Private Report ==========");
-        System.out.println("Total number of products: " + inventory.getTotalItemCount());
-        System.out.println("Total low stock items: " + inventory.getLowStockCount());
-        System.out.println("\nProducts expiring in the next 7 days:");
-        inventory.checkExpiringItems();
-        System.out.println("=========================================");
+        // Served from the report cache until something in the store changes or the day rolls over
+        String report = inventory.getReportCache().getOrCompute("gmReport", StoreClock.today(), inventory.getVersion(),
+                () -> buildGMReport(inventory), String::length);
+        System.out.print(report);
+    }
+
+    private static String buildGMReport(Inventory inventory) {
+        StringBuilder report = new StringBuilder();
+        report.append("========== GM Private Report ==========\n");
+        report.append("Total number of products: ").append(inventory.getTotalItemCount()).append('\n');
+        report.append("Total low stock items: ").append(inventory.getLowStockCount()).append('\n');
+        report.append("\nProducts expiring in the next 7 days:\n");
+        report.append("Alert: Perishable items expiring within the next 7 days:\n");
+        String expiring = inventory.getExpiringItemsReport();
+        report.append(expiring.isEmpty() ? "  No perishable items expiring within the next 7 days.\n" : expiring);
+        List<ReplenishmentPlanner.ReorderLine> reorders = inventory.planReplenishment();
+        report.append("\nSuggested reorders (").append(reorders.size()).append(" products):\n");
+        for (int i = 0; i < Math.min(reorders.size(), GM_REPORT_REORDER_LINES); i++) {
+            report.append("  ").append(reorders.get(i)).append('\n');
+        }
+        report.append("\nManager activity (added / removed / orders filled):\n");
+        ManagerActivity.Snapshot activity = inventory.getManagerActivity().snapshotTotals();
+        for (String manager : activity.getManagers()) {
+            report.append("  ").append(manager).append(": ")
+                    .append(activity.getTotal(manager, ManagerActivity.Kind.ADDED)).append(" / ")
+                    .append(activity.getTotal(manager, ManagerActivity.Kind.REMOVED)).append(" / ")
+                    .append(activity.getTotal(manager, ManagerActivity.Kind.ORDERS_FILLED)).append('\n');
+        }
+        report.append("=========================================\n");
+        return report.toString();
     }
 
     public static String managerLogin(Scanner scanner) {
@@ -272,7 +406,7 @@ public class Main {
             for (String name : sampleProducts[i]) {
                 int qty = 5 + random.nextInt(10);
                 boolean perishable = section.equals("Dairy") || section.equals("Vegetables & Fruits");
-                LocalDate expiration = perishable ? LocalDate.now().plusDays(2 + random.nextInt(10)) : null;
+                LocalDate expiration = perishable ? StoreClock.todayDate().plusDays(2 + random.nextInt(10)) : null;
                 Product p = new Product(name, section, qty, expiration, section, perishable);
                 inventory.addItem(p);
             }
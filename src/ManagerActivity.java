@@ -0,0 +1,204 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what each manager does: units added, units removed and orders filled,
+ * broken down by section and day.
+ *
+ * All counters are LongAdders, so many managers can record at the same time
+ * without losing updates or fighting over a single lock. Running totals per
+ * manager are kept next to the detailed counters so reports can read them
+ * without adding anything up.
+ */
+public class ManagerActivity {
+
+    /**
+     * The kinds of activity that are counted.
+     */
+    public enum Kind { ADDED, REMOVED, ORDERS_FILLED }
+
+    private static final int SNAPSHOT_ATTEMPTS = 8;
+
+    private final Map<Key, LongAdder> cells = new ConcurrentHashMap<>(); // Per manager, section, day and kind
+    private final Map<String, LongAdder[]> totals = new ConcurrentHashMap<>(); // Per manager, one adder per kind
+
+    // Writers bump `started` before and `finished` after an update. A reader that
+    // sees the same count on both sides of its read knows no update was half done.
+    private final LongAdder started = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+
+    /**
+     * Records some activity for today.
+     * @param manager Manager name
+     * @param section Section the activity happened in
+     * @param kind What kind of activity it was
+     * @param amount How much to add (units, or number of orders)
+     */
+    public void record(String manager, String section, Kind kind, long amount) {
+        record(manager, section, StoreClock.today(), kind, amount);
+    }
+
+    /**
+     * Records some activity for a given day.
+     */
+    public void record(String manager, String section, long epochDay, Kind kind, long amount) {
+        LongAdder cell = cells.computeIfAbsent(new Key(manager, section, epochDay, kind), k -> new LongAdder());
+        LongAdder[] managerTotals = totals.computeIfAbsent(manager, k -> newAdders());
+        started.increment();
+        try {
+            cell.add(amount);
+            managerTotals[kind.ordinal()].add(amount);
+        } finally {
+            finished.increment();
+        }
+    }
+
+    /**
+     * Gets a manager's running total for one kind of activity.
+     */
+    public long getTotal(String manager, Kind kind) {
+        LongAdder[] managerTotals = totals.get(manager);
+        return managerTotals == null ? 0 : managerTotals[kind.ordinal()].sum();
+    }
+
+    /**
+     * Gets one counter for a manager, section and day.
+     */
+    public long get(String manager, String section, long epochDay, Kind kind) {
+        LongAdder cell = cells.get(new Key(manager, section, epochDay, kind));
+        return cell == null ? 0 : cell.sum();
+    }
+
+    /**
+     * Takes a snapshot of every manager's running totals.
+     * This only reads the per-manager totals, so its cost depends on the
+     * number of managers and not on how much activity was recorded.
+     */
+    public Snapshot snapshotTotals() {
+        return snapshot(false);
+    }
+
+    /**
+     * Takes a snapshot of the totals and every per-section, per-day counter.
+     */
+    public Snapshot snapshot() {
+        return snapshot(true);
+    }
+
+    private Snapshot snapshot(boolean withDetail) {
+        Snapshot snapshot = null;
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            long before = finished.sum();
+            snapshot = read(withDetail);
+            // Nothing started since `before` and nothing was in flight, so the read is consistent
+            if (started.sum() == before) {
+                snapshot.consistent = true;
+                return snapshot;
+            }
+        }
+        return snapshot; // Writers never stopped; hand back the last best-effort read
+    }
+
+    private Snapshot read(boolean withDetail) {
+        Map<String, long[]> totalsCopy = new TreeMap<>();
+        for (Map.Entry<String, LongAdder[]> entry : totals.entrySet()) {
+            LongAdder[] adders = entry.getValue();
+            long[] values = new long[adders.length];
+            for (int i = 0; i < adders.length; i++) {
+                values[i] = adders[i].sum();
+            }
+            totalsCopy.put(entry.getKey(), values);
+        }
+        Map<Key, Long> cellsCopy = new HashMap<>();
+        if (withDetail) {
+            for (Map.Entry<Key, LongAdder> entry : cells.entrySet()) {
+                cellsCopy.put(entry.getKey(), entry.getValue().sum());
+            }
+        }
+        return new Snapshot(totalsCopy, cellsCopy);
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[Kind.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * A frozen copy of the counters that reports can read at their own pace.
+     */
+    public static class Snapshot {
+        private final Map<String, long[]> totals;
+        private final Map<Key, Long> cells;
+        private boolean consistent;
+
+        private Snapshot(Map<String, long[]> totals, Map<Key, Long> cells) {
+            this.totals = totals;
+            this.cells = cells;
+        }
+
+        /**
+         * Gets the managers in the snapshot, sorted by name.
+         */
+        public Set<String> getManagers() {
+            return Collections.unmodifiableSet(totals.keySet());
+        }
+
+        public long getTotal(String manager, Kind kind) {
+            long[] values = totals.get(manager);
+            return values == null ? 0 : values[kind.ordinal()];
+        }
+
+        /**
+         * Gets one detailed counter (only filled in by {@link ManagerActivity#snapshot()}).
+         */
+        public long get(String manager, String section, long epochDay, Kind kind) {
+            return cells.getOrDefault(new Key(manager, section, epochDay, kind), 0L);
+        }
+
+        /**
+         * Tells if no update was half done while the snapshot was taken.
+         */
+        public boolean isConsistent() {
+            return consistent;
+        }
+    }
+
+    // Identifies one detailed counter
+    private static final class Key {
+        private final String manager;
+        private final String section;
+        private final long epochDay;
+        private final Kind kind;
+
+        Key(String manager, String section, long epochDay, Kind kind) {
+            this.manager = manager;
+            this.section = section;
+            this.epochDay = epochDay;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return epochDay == other.epochDay && kind == other.kind
+                    && manager.equals(other.manager) && section.equals(other.section);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = manager.hashCode();
+            hash = 31 * hash + section.hashCode();
+            hash = 31 * hash + Long.hashCode(epochDay);
+            return 31 * hash + kind.ordinal();
+        }
+    }
+}
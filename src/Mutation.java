@@ -0,0 +1,152 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * One change to an inventory, in a form that can be sent to another process.
+ *
+ * Item changes carry the item's full on-hand state afterwards (quantity, or
+ * every batch for perishables) instead of the operation that caused it. That
+ * way a standby ends up with exactly the same batches as the primary, even
+ * though it doesn't see the primary's holds, and applying a change twice is
+ * harmless.
+ */
+public class Mutation {
+
+    /**
+     * Kinds of change. SNAPSHOT is not a change itself: it says the next
+     * getQuantity() mutations are item states that together cover every
+     * change up to its sequence.
+     */
+    public enum Type { ITEM_STATE, CONTRIBUTION, ORDER_FILLED, SNAPSHOT }
+
+    private long sequence; // Set by whoever ships the stream
+    private final long timestamp;
+    private final Type type;
+    private final String name;     // Item name, or manager name for activity
+    private final String section;
+    private final String category;
+    private final boolean perishable;
+    private final boolean movement; // true if this was a real stock movement, not a load
+    private final int quantity;     // On-hand quantity, or units for activity
+    private final int sold;         // Units of the change that were sold to an order
+    private final int[] batchDays;  // Batch expiry epoch days (perishables)
+    private final int[] batchQuantities;
+
+    private Mutation(long timestamp, Type type, String name, String section, String category, boolean perishable,
+                     boolean movement, int quantity, int sold, int[] batchDays, int[] batchQuantities) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.name = name;
+        this.section = section;
+        this.category = category;
+        this.perishable = perishable;
+        this.movement = movement;
+        this.quantity = quantity;
+        this.sold = sold;
+        this.batchDays = batchDays;
+        this.batchQuantities = batchQuantities;
+    }
+
+    /**
+     * Captures an item's current on-hand state.
+     * @param movement true if the change was a real stock movement
+     */
+    public static Mutation itemState(AbstractItem item, boolean movement) {
+        return itemState(item, movement, 0);
+    }
+
+    /**
+     * Captures an item's current on-hand state after units were sold.
+     * @param sold Units the change sold to an order
+     */
+    public static Mutation itemState(AbstractItem item, boolean movement, int sold) {
+        String category = item instanceof Product ? ((Product) item).getCategory() : "General";
+        int[][] batches = item instanceof Product ? ((Product) item).getBatchState() : new int[][] { new int[0], new int[0] };
+        int quantity = item.isPerishable() ? 0 : item.getQuantity();
+        return new Mutation(System.currentTimeMillis(), Type.ITEM_STATE, item.getName(), item.getSection(), category,
+                item.isPerishable(), movement, quantity, sold, batches[0], batches[1]);
+    }
+
+    /**
+     * Records units a manager added (or removed, if negative) in a section.
+     */
+    public static Mutation contribution(String manager, String section, int quantity) {
+        return new Mutation(System.currentTimeMillis(), Type.CONTRIBUTION, manager, section, "", false, true, quantity, 0, new int[0], new int[0]);
+    }
+
+    /**
+     * Records an order a manager filled.
+     */
+    public static Mutation orderFilled(String manager, String section, int quantity) {
+        return new Mutation(System.currentTimeMillis(), Type.ORDER_FILLED, manager, section, "", false, true, quantity, 0, new int[0], new int[0]);
+    }
+
+    /**
+     * Starts a snapshot of the given number of item states.
+     */
+    public static Mutation snapshot(int itemCount) {
+        return new Mutation(System.currentTimeMillis(), Type.SNAPSHOT, "", "", "", false, false, itemCount, 0, new int[0], new int[0]);
+    }
+
+    public long getSequence() { return sequence; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
+    public long getTimestamp() { return timestamp; }
+    public Type getType() { return type; }
+    public String getName() { return name; }
+    public String getSection() { return section; }
+    public String getCategory() { return category; }
+    public boolean isPerishable() { return perishable; }
+    public boolean isMovement() { return movement; }
+    public int getQuantity() { return quantity; }
+    public int getSold() { return sold; }
+    public int[] getBatchDays() { return batchDays; }
+    public int[] getBatchQuantities() { return batchQuantities; }
+
+    /**
+     * Writes this mutation to a stream.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(sequence);
+        out.writeLong(timestamp);
+        out.writeByte(type.ordinal());
+        out.writeUTF(name);
+        out.writeUTF(section);
+        out.writeUTF(category);
+        out.writeBoolean(perishable);
+        out.writeBoolean(movement);
+        out.writeInt(quantity);
+        out.writeInt(sold);
+        out.writeInt(batchDays.length);
+        for (int i = 0; i < batchDays.length; i++) {
+            out.writeInt(batchDays[i]);
+            out.writeInt(batchQuantities[i]);
+        }
+    }
+
+    /**
+     * Reads a mutation written by {@link #writeTo(DataOutputStream)}.
+     */
+    public static Mutation readFrom(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        Type type = Type.values()[in.readByte()];
+        String name = in.readUTF();
+        String section = in.readUTF();
+        String category = in.readUTF();
+        boolean perishable = in.readBoolean();
+        boolean movement = in.readBoolean();
+        int quantity = in.readInt();
+        int sold = in.readInt();
+        int count = in.readInt();
+        int[] days = new int[count];
+        int[] quantities = new int[count];
+        for (int i = 0; i < count; i++) {
+            days[i] = in.readInt();
+            quantities[i] = in.readInt();
+        }
+        Mutation mutation = new Mutation(timestamp, type, name, section, category, perishable, movement, quantity, sold, days, quantities);
+        mutation.setSequence(sequence);
+        return mutation;
+    }
+}
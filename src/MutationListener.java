@@ -0,0 +1,13 @@
+/**
+ * Interface for anything that wants to hear about changes to an Inventory,
+ * in the order they happen (used for replication).
+ */
+public interface MutationListener {
+
+    /**
+     * Called right after the inventory changes. For item changes this runs while
+     * the item is locked, so don't lock items or wait on anything that does.
+     * @param mutation What changed.
+     */
+    void onMutation(Mutation mutation);
+}
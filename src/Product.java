@@ -1,6 +1,9 @@
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Product class that represents an item in the inventory.
@@ -12,8 +15,14 @@ import java.util.List;
  */
 public class Product extends AbstractItem implements StockAdjustable {
 
-    private String category; // What kind of product it is (e.g., Snacks, Dairy)
+    private int categoryId; // What kind of product it is (e.g., Snacks, Dairy), as an id in SymbolTable.CATEGORIES
     private List<ProductBatch> batches; // Only used if the product is perishable
+    private int reserved; // Units held by open reservations (non-perishable only, batches track their own)
+
+    // Expiry worked out from the batches whenever they change, so checks don't have to walk them
+    private volatile LocalDate earliestExpiration; // Closest batch expiration, null if there are no batches
+    private volatile int earliestExpiryDay = Integer.MAX_VALUE; // Epoch day the first batch expires
+    private volatile int latestExpiryDay = Integer.MIN_VALUE; // Epoch day the last batch expires
 
     /**
      * Constructor for Product
@@ -21,8 +30,16 @@ public class Product extends AbstractItem implements StockAdjustable {
      * If it's not perishable, we just store the quantity normally.
      */
     public Product(String name, String category, int quantity, LocalDate expirationDate, String section, boolean perishable) {
-        super(name, 0, null, section, perishable); // Start with quantity 0 and set it based on perishable status
-        this.category = category;
+        this(name, SymbolTable.CATEGORIES.intern(category), quantity, expirationDate, SymbolTable.SECTIONS.intern(section), perishable);
+    }
+
+    /**
+     * Constructor for Product when the category and section are already dictionary ids
+     * (used when loading a saved inventory)
+     */
+    public Product(String name, int categoryId, int quantity, LocalDate expirationDate, int sectionId, boolean perishable) {
+        super(name, 0, null, sectionId, perishable); // Start with quantity 0 and set it based on perishable status
+        this.categoryId = categoryId;
         this.batches = new ArrayList<>();
 
         if (perishable) {
@@ -36,7 +53,8 @@ public class Product extends AbstractItem implements StockAdjustable {
     /**
      * This method adds a new batch or updates an existing one (if the expiration date already exists)
      */
-    public void addOrUpdateBatch(int qty, LocalDate expirationDate) {
+    public synchronized void addOrUpdateBatch(int qty, LocalDate expirationDate) {
+        touch();
         for (ProductBatch batch : batches) {
             if (batch.getExpirationDate().equals(expirationDate)) {
                 batch.setQuantity(batch.getQuantity() + qty);
@@ -45,6 +63,20 @@ public class Product extends AbstractItem implements StockAdjustable {
         }
         // If no batch matched the expiration date, we add a new one
         batches.add(new ProductBatch(qty, expirationDate));
+        refreshExpiry();
+    }
+
+    // Works out the earliest and latest batch expiry again (call whenever batches are added or removed)
+    private void refreshExpiry() {
+        ProductBatch earliest = null;
+        int latest = Integer.MIN_VALUE;
+        for (ProductBatch batch : batches) {
+            if (earliest == null || batch.getExpiryDay() < earliest.getExpiryDay()) earliest = batch;
+            latest = Math.max(latest, batch.getExpiryDay());
+        }
+        earliestExpiration = earliest == null ? null : earliest.getExpirationDate();
+        earliestExpiryDay = earliest == null ? Integer.MAX_VALUE : earliest.getExpiryDay();
+        latestExpiryDay = latest;
     }
 
     /**
@@ -52,7 +84,7 @@ public class Product extends AbstractItem implements StockAdjustable {
      * If it's perishable, it adds up all batch quantities
      */
     @Override
-    public int getQuantity() {
+    public synchronized int getQuantity() {
         if (!perishable) return quantity;
         return batches.stream().mapToInt(ProductBatch::getQuantity).sum();
     }
@@ -63,17 +95,37 @@ public class Product extends AbstractItem implements StockAdjustable {
     @Override
     public LocalDate getExpirationDate() {
         if (!perishable) return null;
-        return batches.stream()
-                .map(ProductBatch::getExpirationDate)
-                .min(LocalDate::compareTo)
-                .orElse(null); // If no batches, return null
+        return earliestExpiration; // If no batches, this is null
+    }
+
+    /**
+     * For perishable items, gets the epoch day the first batch expires
+     * (Integer.MAX_VALUE if there is nothing that can expire)
+     */
+    public int getEarliestExpiryDay() {
+        return perishable ? earliestExpiryDay : Integer.MAX_VALUE;
+    }
+
+    /**
+     * For perishable items, gets the epoch day the last batch expires.
+     * The product counts as expired from the day after this.
+     */
+    public int getLatestExpiryDay() {
+        return latestExpiryDay;
     }
 
     /**
      * Returns the product's category (like "Dairy" or "Clothing")
      */
     public String getCategory() {
-        return category;
+        return SymbolTable.CATEGORIES.nameOf(categoryId);
+    }
+
+    /**
+     * Returns the product's category id in SymbolTable.CATEGORIES
+     */
+    public int getCategoryId() {
+        return categoryId;
     }
 
     /**
@@ -95,7 +147,8 @@ public class Product extends AbstractItem implements StockAdjustable {
      * Adds stock to non-perishable products
      */
     @Override
-    public void addStock(int amount) {
+    public synchronized void addStock(int amount) {
+        touch();
         if (!perishable) {
             this.quantity += amount;
         }
@@ -106,30 +159,191 @@ public class Product extends AbstractItem implements StockAdjustable {
      * Throws an error if someone tries to remove more than we have
      */
     @Override
-    public void removeStock(int amount) throws IllegalArgumentException {
+    public synchronized void removeStock(int amount) throws IllegalArgumentException {
         if (!perishable) {
-            if (amount > this.quantity) throw new IllegalArgumentException("Not enough stock");
+            if (amount > this.quantity - reserved) throw new IllegalArgumentException("Not enough stock");
             this.quantity -= amount;
+            touch();
         }
     }
 
     /**
      * Directly sets a new quantity (non-perishable only)
+     * Throws an error if that would leave less than is on hold
      */
-    public void updateStock(int newQuantity) {
+    public synchronized void updateStock(int newQuantity) throws IllegalArgumentException {
         if (!perishable) {
+            if (newQuantity < reserved) throw new IllegalArgumentException("Not enough stock: " + reserved + " unit(s) are on hold");
             this.quantity = newQuantity;
         }
+        touch();
+    }
+
+    /**
+     * Same as updateStock(int), and holds the product's lock like the other stock changes
+     */
+    @Override
+    public synchronized void setQuantity(int quantity) {
+        updateStock(quantity);
     }
 
     /**
      * Adds or subtracts quantity using operators like "+" or "-" (non-perishable)
+     * Throws an error if subtracting would leave less than is on hold
+     */
+    public synchronized void updateStock(String operator, int value) throws IllegalArgumentException {
+        if (operator.equals("+")) addStock(value);
+        else if (operator.equals("-")) removeStock(value);
+        else touch();
+    }
+
+    /**
+     * Gets how many units are currently on hold for open orders
+     */
+    public synchronized int getReservedQuantity() {
+        if (!perishable) return reserved;
+        int total = 0;
+        for (ProductBatch batch : batches) {
+            total += batch.getReserved();
+        }
+        return total;
+    }
+
+    /**
+     * Gets how many units can still be promised to new orders (on hand minus holds).
+     * Expired lots are never promised.
+     */
+    public synchronized int getAvailableToPromise() {
+        if (!perishable) return quantity - reserved;
+        int today = StoreClock.today();
+        int total = 0;
+        for (ProductBatch batch : batches) {
+            if (!batch.isExpired(today)) {
+                total += batch.getAvailable();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Puts units on hold for an order. The check and the hold happen under the
+     * product's lock, so two orders can never both be promised the same unit.
+     * Perishables are held first-expired-first-out from the unexpired lots.
+     *
+     * @param qty Units to hold
+     * @return the units held per lot (empty for non-perishables), or null if there isn't enough stock
+     */
+    synchronized Map<ProductBatch, Integer> reserve(int qty) {
+        if (qty <= 0 || getAvailableToPromise() < qty) return null;
+        touch();
+        Map<ProductBatch, Integer> lots = new LinkedHashMap<>();
+        if (!perishable) {
+            reserved += qty;
+            return lots;
+        }
+        int today = StoreClock.today();
+        List<ProductBatch> byExpiry = new ArrayList<>(batches);
+        byExpiry.sort(Comparator.comparingInt(ProductBatch::getExpiryDay));
+        int remaining = qty;
+        for (ProductBatch batch : byExpiry) {
+            if (remaining == 0) break;
+            if (batch.isExpired(today)) continue;
+            int take = Math.min(remaining, batch.getAvailable());
+            if (take > 0) {
+                batch.setReserved(batch.getReserved() + take);
+                lots.put(batch, take);
+                remaining -= take;
+            }
+        }
+        return lots;
+    }
+
+    /**
+     * Turns a hold into a sale: the held units leave the shelf for good.
+     */
+    synchronized void commitReservation(Map<ProductBatch, Integer> lots, int qty) {
+        touch();
+        if (!perishable) {
+            reserved -= qty;
+            quantity -= qty;
+            return;
+        }
+        for (Map.Entry<ProductBatch, Integer> lot : lots.entrySet()) {
+            ProductBatch batch = lot.getKey();
+            batch.setReserved(batch.getReserved() - lot.getValue());
+            batch.setQuantity(batch.getQuantity() - lot.getValue());
+        }
+    }
+
+    /**
+     * Gives held units back so they can be promised again.
+     */
+    synchronized void releaseReservation(Map<ProductBatch, Integer> lots, int qty) {
+        touch();
+        if (!perishable) {
+            reserved -= qty;
+            return;
+        }
+        for (Map.Entry<ProductBatch, Integer> lot : lots.entrySet()) {
+            ProductBatch batch = lot.getKey();
+            batch.setReserved(batch.getReserved() - lot.getValue());
+        }
+    }
+
+    /**
+     * Empties every batch that expired before the given epoch day, except for units on hold.
+     * @return number of units removed
      */
-    public void updateStock(String operator, int value) {
+    public synchronized int removeExpiredUnits(int today) {
+        if (!perishable || today <= earliestExpiryDay) return 0; // Nothing has expired yet
+        int removed = 0;
+        for (ProductBatch batch : batches) {
+            if (batch.isExpired(today) && batch.getAvailable() > 0) {
+                removed += batch.getAvailable();
+                batch.setQuantity(batch.getReserved());
+                touch();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the batches as two arrays: expiry epoch days and quantities (used for replication)
+     */
+    public synchronized int[][] getBatchState() {
+        int[] days = new int[batches.size()];
+        int[] quantities = new int[batches.size()];
+        for (int i = 0; i < batches.size(); i++) {
+            days[i] = batches.get(i).getExpiryDay();
+            quantities[i] = batches.get(i).getQuantity();
+        }
+        return new int[][] { days, quantities };
+    }
+
+    /**
+     * Overwrites the on-hand stock with a state copied from another inventory.
+     * Non-perishables take the quantity; perishables take the batches.
+     * Units on hold here stay on hold.
+     */
+    synchronized void restoreState(int quantity, int[] batchDays, int[] batchQuantities) {
+        touch();
         if (!perishable) {
-            if (operator.equals("+")) this.quantity += value;
-            else if (operator.equals("-")) this.quantity -= value;
+            this.quantity = quantity;
+            return;
+        }
+        List<ProductBatch> restored = new ArrayList<>(batchDays.length);
+        for (int i = 0; i < batchDays.length; i++) {
+            ProductBatch batch = null;
+            for (ProductBatch existing : batches) {
+                if (existing.getExpiryDay() == batchDays[i]) batch = existing;
+            }
+            if (batch == null) batch = new ProductBatch(0, LocalDate.ofEpochDay(batchDays[i]));
+            batch.setQuantity(batchQuantities[i]);
+            restored.add(batch);
         }
+        batches.clear();
+        batches.addAll(restored);
+        refreshExpiry();
     }
 
     /**
@@ -138,8 +352,7 @@ public class Product extends AbstractItem implements StockAdjustable {
     @Override
     public boolean isExpired() {
         if (!perishable) return false;
-        LocalDate today = LocalDate.now();
-        return batches.stream().allMatch(batch -> today.isAfter(batch.getExpirationDate()));
+        return StoreClock.today() > latestExpiryDay;
     }
 
     /**
@@ -149,10 +362,10 @@ public class Product extends AbstractItem implements StockAdjustable {
     @Override
     public String toString() {
         if (!perishable) {
-            return "Name: " + name + ", Quantity: " + quantity + ", Section: " + section + ", Type: Product";
+            return "Name: " + name + ", Quantity: " + quantity + ", Section: " + getSection() + ", Type: Product";
         } else {
             StringBuilder sb = new StringBuilder();
-            sb.append("Name: ").append(name).append(", Section: ").append(section).append(", Batches: [");
+            sb.append("Name: ").append(name).append(", Section: ").append(getSection()).append(", Batches: [");
             for (ProductBatch batch : batches) {
                 sb.append(batch.toString()).append(", ");
             }
@@ -168,10 +381,16 @@ public class Product extends AbstractItem implements StockAdjustable {
     @Override
     public String toCSV() {
         if (!perishable) {
-            return name + "," + quantity + ",N/A," + section + ",false";
+            return name + "," + quantity + ",N/A," + getSection() + ",false";
         } else {
-            ProductBatch first = batches.get(0);
-            return name + "," + first.getQuantity() + "," + first.getExpirationDate() + "," + section + ",true";
+            return toCSV(batches.get(0));
         }
     }
+
+    /**
+     * Converts one batch of this perishable product into CSV format
+     */
+    public String toCSV(ProductBatch batch) {
+        return name + "," + batch.getQuantity() + "," + batch.getExpirationDate() + "," + getSection() + ",true";
+    }
 }
@@ -2,11 +2,14 @@ import java.time.LocalDate;
 
 public class ProductBatch {
     private int quantity;
+    private int reserved; // Units in this lot held by open reservations
     private LocalDate expirationDate;
+    private int expiryDay; // expirationDate as an epoch day, for quick comparisons with StoreClock.today()
 
     public ProductBatch(int quantity, LocalDate expirationDate) {
         this.quantity = quantity;
         this.expirationDate = expirationDate;
+        this.expiryDay = (int) expirationDate.toEpochDay();
     }
 
     public int getQuantity() {
@@ -17,10 +20,42 @@ public class ProductBatch {
         this.quantity = quantity;
     }
 
+    /**
+     * Units of this lot that are on hold for an order but not yet picked.
+     */
+    public int getReserved() {
+        return reserved;
+    }
+
+    public void setReserved(int reserved) {
+        this.reserved = reserved;
+    }
+
+    /**
+     * Units of this lot that can still be promised to a new order.
+     */
+    public int getAvailable() {
+        return quantity - reserved;
+    }
+
     public LocalDate getExpirationDate() {
         return expirationDate;
     }
 
+    /**
+     * Gets the expiration date as an epoch day.
+     */
+    public int getExpiryDay() {
+        return expiryDay;
+    }
+
+    /**
+     * Checks if this lot is past its date on the given epoch day.
+     */
+    public boolean isExpired(int today) {
+        return today > expiryDay;
+    }
+
     @Override
     public String toString() {
         return "Qty: " + quantity + ", Exp: " + expirationDate;
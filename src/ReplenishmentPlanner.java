@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Works out what to reorder and how much.
+ *
+ * For every product it looks at what is on hand, what is on hold for open
+ * orders, how fast it has been selling lately (orders only, stock thrown out
+ * or adjusted away doesn't count) and, for perishables, how long
+ * the freshest batch will last. From that it picks a reorder point and an
+ * economic order quantity:
+ * <pre>
+ *     EOQ = sqrt(2 * yearly demand * cost per order / holding cost per unit per year)
+ * </pre>
+ * Perishable orders are capped at what can be sold before the stock goes off.
+ *
+ * Sections are planned in parallel on the fork-join pool. Each product's plan
+ * is remembered together with the product's version, so the next run only
+ * re-plans products whose stock changed (a sale always changes the stock).
+ * Everything is re-planned once a new day starts, since shelf life and the
+ * sales window both move.
+ */
+public class ReplenishmentPlanner {
+
+    private static final int CHUNK_SIZE = 2048; // Products planned per task before splitting stops
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final Inventory inventory;
+    private int salesWindowDays = 14;
+    private int leadTimeDays = 2;
+    private int safetyDays = 1;
+    private double orderCost = 25.0;
+    private double holdingCostPerUnitYear = 2.0;
+
+    // Last plan per product, indexed by the product's name id
+    private long[] plannedVersions = new long[0];
+    private ReorderLine[] plans = new ReorderLine[0];
+    private int plannedDay = Integer.MIN_VALUE;
+    private int lastReplanned; // How many products the last run had to plan again
+
+    /**
+     * Constructs a planner for an inventory.
+     */
+    public ReplenishmentPlanner(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    public void setSalesWindowDays(int salesWindowDays) { this.salesWindowDays = salesWindowDays; invalidate(); }
+    public void setLeadTimeDays(int leadTimeDays) { this.leadTimeDays = leadTimeDays; invalidate(); }
+    public void setSafetyDays(int safetyDays) { this.safetyDays = safetyDays; invalidate(); }
+    public void setOrderCost(double orderCost) { this.orderCost = orderCost; invalidate(); }
+    public void setHoldingCostPerUnitYear(double holdingCostPerUnitYear) { this.holdingCostPerUnitYear = holdingCostPerUnitYear; invalidate(); }
+
+    /**
+     * Gets how many products the last run actually re-planned.
+     */
+    public int getLastReplanned() {
+        return lastReplanned;
+    }
+
+    /**
+     * Plans every product and returns the ones that should be reordered,
+     * sorted by section and then name.
+     */
+    public synchronized List<ReorderLine> plan() {
+        int today = StoreClock.today();
+        if (today != plannedDay) {
+            invalidate();
+            plannedDay = today;
+        }
+        int ids = SymbolTable.NAMES.size();
+        if (plans.length < ids) {
+            plannedVersions = Arrays.copyOf(plannedVersions, ids);
+            plans = Arrays.copyOf(plans, ids);
+        }
+
+        long now = System.currentTimeMillis();
+        List<SectionTask> tasks = new ArrayList<>();
+        for (NavigableMap<String, AbstractItem> section : inventory.getSectionIndex().values()) {
+            AbstractItem[] items = section.values().toArray(new AbstractItem[0]);
+            tasks.add(new SectionTask(this, items, 0, items.length, today, now));
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (SectionTask task : tasks) {
+            pool.execute(task);
+        }
+
+        List<ReorderLine> reorders = new ArrayList<>();
+        lastReplanned = 0;
+        for (SectionTask task : tasks) {
+            Result result = task.join();
+            reorders.addAll(result.reorders);
+            lastReplanned += result.replanned;
+        }
+        return reorders;
+    }
+
+    // Forgets every cached plan so the next run starts from scratch
+    private void invalidate() {
+        Arrays.fill(plannedVersions, -1);
+    }
+
+    /**
+     * Plans one product.
+     * @param product Product to plan
+     * @param today Today's epoch day
+     * @param nowMillis Current time, for the sales window
+     * @return the plan (quantity is 0 if nothing needs ordering)
+     */
+    ReorderLine planProduct(Product product, int today, long nowMillis) {
+        int onHand = product.getQuantity();
+        int reserved = product.getReservedQuantity();
+        int available = product.getAvailableToPromise();
+        long sold = inventory.getStockHistory().sum(product.getNameId(), StockHistory.Resolution.DAY,
+                nowMillis - (salesWindowDays - 1) * DAY_MILLIS, nowMillis, StockHistory.Measure.SOLD);
+        double dailyDemand = (double) sold / salesWindowDays;
+
+        int reorderPoint = Math.max((int) Math.ceil(dailyDemand * (leadTimeDays + safetyDays)), Inventory.LOW_STOCK);
+        int quantity = 0;
+        if (available < reorderPoint) {
+            double yearlyDemand = dailyDemand * 365;
+            int eoq = (int) Math.ceil(Math.sqrt(2 * yearlyDemand * orderCost / holdingCostPerUnitYear));
+            quantity = Math.max(eoq, reorderPoint - available);
+            if (product.isPerishable()) {
+                // Don't order more than can be sold before a fresh batch goes off
+                int shelfLifeDays = Math.max(1, product.getLatestExpiryDay() - today);
+                int sellable = (int) Math.ceil(dailyDemand * shelfLifeDays) - available;
+                quantity = Math.min(quantity, Math.max(sellable, reorderPoint - available));
+            }
+        }
+        return new ReorderLine(product, onHand, reserved, dailyDemand, reorderPoint, Math.max(quantity, 0));
+    }
+
+    // Plans a slice of one section, splitting it up if it's big
+    private static class SectionTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ReplenishmentPlanner planner;
+        private final transient AbstractItem[] items;
+        private final int from;
+        private final int to;
+        private final int today;
+        private final long now;
+
+        SectionTask(ReplenishmentPlanner planner, AbstractItem[] items, int from, int to, int today, long now) {
+            this.planner = planner;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.today = today;
+            this.now = now;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                SectionTask left = new SectionTask(planner, items, from, middle, today, now);
+                left.fork();
+                Result right = new SectionTask(planner, items, middle, to, today, now).compute();
+                Result result = left.join();
+                result.reorders.addAll(right.reorders);
+                result.replanned += right.replanned;
+                return result;
+            }
+            Result result = new Result();
+            long[] plannedVersions = planner.plannedVersions;
+            ReorderLine[] plans = planner.plans;
+            for (int i = from; i < to; i++) {
+                if (!(items[i] instanceof Product)) continue;
+                Product product = (Product) items[i];
+                int id = product.getNameId();
+                long version = product.getVersion();
+                // Each product is only ever planned by one task, so these slots are never shared
+                if (plannedVersions[id] != version || plans[id] == null || plans[id].getProduct() != product) {
+                    plans[id] = planner.planProduct(product, today, now);
+                    plannedVersions[id] = version;
+                    result.replanned++;
+                }
+                if (plans[id].getQuantity() > 0) result.reorders.add(plans[id]);
+            }
+            return result;
+        }
+    }
+
+    private static class Result {
+        private final List<ReorderLine> reorders = new ArrayList<>();
+        private int replanned;
+    }
+
+    /**
+     * One product's plan.
+     */
+    public static class ReorderLine {
+        private final Product product;
+        private final int onHand;
+        private final int reserved;
+        private final double dailyDemand;
+        private final int reorderPoint;
+        private final int quantity;
+
+        ReorderLine(Product product, int onHand, int reserved, double dailyDemand, int reorderPoint, int quantity) {
+            this.product = product;
+            this.onHand = onHand;
+            this.reserved = reserved;
+            this.dailyDemand = dailyDemand;
+            this.reorderPoint = reorderPoint;
+            this.quantity = quantity;
+        }
+
+        public Product getProduct() { return product; }
+        public int getOnHand() { return onHand; }
+        public int getReserved() { return reserved; }
+        public double getDailyDemand() { return dailyDemand; }
+        public int getReorderPoint() { return reorderPoint; }
+        public int getQuantity() { return quantity; }
+
+        @Override
+        public String toString() {
+            return String.format("%s (Section: %s) - order %d (on hand %d, held %d, selling %.1f/day, reorder at %d)",
+                    product.getName(), product.getSection(), quantity, onHand, reserved, dailyDemand, reorderPoint);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The primary side of replication: ships every change of an Inventory to a
+ * standby process on the same machine over a local socket.
+ *
+ * Changes are kept until the standby acknowledges it has applied them, so a
+ * standby that drops off and reconnects picks up right after the last change
+ * it applied. A standby that has applied nothing yet, or that fell further
+ * behind than the backlog keeps (even while connected), gets a snapshot of
+ * every item's stock and then the changes made after it. Manager activity is not part of the
+ * snapshot, only the changes to it that come after.
+ *
+ * Every primary picks a random id when it starts, and the standby sends back
+ * the id it last followed. Sequence numbers only mean something within one
+ * primary's run, so a standby that followed another primary (or this one
+ * before a restart) is never resumed; it clears its copy and gets a snapshot.
+ *
+ * The backlog is bounded (DEFAULT_MAX_BACKLOG changes unless set), so the primary's memory doesn't grow
+ * while no standby is connected. Past that the backlog is dropped and the next
+ * standby is brought up to date with a snapshot instead.
+ *
+ * Example:
+ * <pre>
+ *     ReplicationPrimary primary = new ReplicationPrimary(inventory, 0);
+ *     primary.start();
+ *     int port = primary.getPort(); // Give this to the standby
+ * </pre>
+ */
+public class ReplicationPrimary implements MutationListener {
+
+    public static final int DEFAULT_MAX_BACKLOG = 1_000_000; // Most changes kept for a standby before falling back to a snapshot
+    private static final int SEND_BATCH = 512; // Changes written per flush
+
+    private final Inventory inventory;
+    private final ServerSocket server;
+    private final long primaryId = newPrimaryId(); // Tells this run's sequence numbers apart from any other's
+    private int maxBacklog = DEFAULT_MAX_BACKLOG;
+    // Both guarded by this. Sequence numbers go up from the front of unacked to the back of pending.
+    private final ArrayDeque<Mutation> unacked = new ArrayDeque<>(); // Sent to the standby, not acknowledged yet
+    private final ArrayDeque<Mutation> pending = new ArrayDeque<>(); // Not sent yet
+    private long lastSequence;
+    private long trimmedThrough; // Newest change no longer in the backlog (acknowledged, dropped or covered by a snapshot)
+    private long connection; // Counts standby connections, so acks from an old one are ignored
+    private long closedConnection; // Last connection the standby closed
+    private volatile long ackedSequence;
+    private volatile boolean running = true;
+
+    /**
+     * Opens the socket and starts capturing changes to the inventory.
+     * @param inventory Inventory to replicate
+     * @param port Local port to listen on, or 0 to pick a free one
+     */
+    public ReplicationPrimary(Inventory inventory, int port) throws IOException {
+        this.inventory = inventory;
+        this.server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+        inventory.setMutationListener(this);
+    }
+
+    /**
+     * Starts accepting a standby in the background.
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::serve, "replication-primary");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Queues a change for the standby. Called by the Inventory after each change.
+     */
+    @Override
+    public synchronized void onMutation(Mutation mutation) {
+        mutation.setSequence(++lastSequence);
+        pending.addLast(mutation);
+        if (unacked.size() + pending.size() > maxBacklog) {
+            // Nobody is keeping up; forget the backlog and send a snapshot instead
+            unacked.clear();
+            pending.clear();
+            trimmedThrough = lastSequence;
+        }
+        notifyAll();
+    }
+
+    public int getPort() { return server.getLocalPort(); }
+
+    public long getPrimaryId() { return primaryId; }
+
+    public synchronized void setMaxBacklog(int maxBacklog) { this.maxBacklog = maxBacklog; }
+
+    /**
+     * Gets the sequence number of the newest change.
+     */
+    public synchronized long getLastSequence() { return lastSequence; }
+
+    /**
+     * Gets the sequence number of the newest change the standby has applied.
+     */
+    public long getAckedSequence() { return ackedSequence; }
+
+    /**
+     * Gets how many changes the standby is behind by.
+     */
+    public synchronized long getLagMutations() { return lastSequence - ackedSequence; }
+
+    /**
+     * Stops shipping changes and closes the socket.
+     */
+    public void stop() throws IOException {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        server.close();
+    }
+
+    // Serves one standby at a time until stopped
+    private void serve() {
+        while (running) {
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                long current;
+                synchronized (this) {
+                    current = ++connection;
+                }
+                long sent = handshake(in, out);
+                Thread acks = new Thread(() -> readAcks(in, current), "replication-acks");
+                acks.setDaemon(true);
+                acks.start();
+                ship(out, sent, current);
+            } catch (IOException | InterruptedException e) {
+                if (running) System.out.println("Replication: standby disconnected (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    /**
+     * Reads which primary the standby followed and the last change it applied, sends
+     * our id back, and works out where to start from.
+     * @return the sequence of the last change the standby has, once this is done
+     */
+    private long handshake(DataInputStream in, DataOutputStream out) throws IOException {
+        long followed = in.readLong();
+        long applied = in.readLong();
+        out.writeLong(primaryId);
+        out.flush();
+        synchronized (this) {
+            // Put everything that was sent but never acknowledged back in line
+            while (!unacked.isEmpty()) {
+                pending.addFirst(unacked.removeLast());
+            }
+            // A standby that has applied nothing may have missed stock loaded before we attached,
+            // and one that followed another primary has sequence numbers that mean nothing here
+            if (followed == primaryId && applied > 0 && applied >= trimmedThrough && applied <= lastSequence) {
+                dropThrough(applied);
+                ackedSequence = applied;
+                return applied;
+            }
+            ackedSequence = 0;
+        }
+        return sendSnapshot(out);
+    }
+
+    /**
+     * Sends every item's stock, which covers every change so far. Later changes are replayed on top.
+     * @return the sequence the snapshot covers up to
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        long base;
+        synchronized (this) {
+            base = lastSequence;
+            dropThrough(base);
+        }
+        List<Mutation> snapshot = inventory.snapshotState();
+        Mutation header = Mutation.snapshot(snapshot.size());
+        header.setSequence(base);
+        header.writeTo(out);
+        for (Mutation mutation : snapshot) {
+            mutation.setSequence(base);
+            mutation.writeTo(out);
+        }
+        out.flush();
+        return base;
+    }
+
+    private void ship(DataOutputStream out, long sent, long current) throws IOException, InterruptedException {
+        List<Mutation> batch = new ArrayList<>(SEND_BATCH);
+        while (running) {
+            boolean resync;
+            synchronized (this) {
+                while (running && pending.isEmpty() && trimmedThrough <= sent && closedConnection != current) {
+                    wait();
+                }
+                if (closedConnection == current) throw new IOException("standby closed the connection");
+                // If the backlog overflowed while this standby was behind, catch it up with a snapshot
+                resync = trimmedThrough > sent;
+                while (!resync && !pending.isEmpty() && batch.size() < SEND_BATCH) {
+                    Mutation mutation = pending.removeFirst();
+                    unacked.addLast(mutation);
+                    batch.add(mutation);
+                }
+            }
+            if (resync) {
+                sent = sendSnapshot(out);
+                continue;
+            }
+            for (Mutation mutation : batch) {
+                mutation.writeTo(out);
+            }
+            out.flush();
+            if (!batch.isEmpty()) sent = batch.get(batch.size() - 1).getSequence();
+            batch.clear();
+        }
+    }
+
+    private void readAcks(DataInputStream in, long current) {
+        try {
+            while (running) {
+                long acked = in.readLong();
+                synchronized (this) {
+                    if (current != connection) return;
+                    ackedSequence = acked;
+                    dropThrough(acked);
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed; wake up ship() so it lets the next standby in
+            synchronized (this) {
+                if (current == connection) closedConnection = current;
+                notifyAll();
+            }
+        }
+    }
+
+    private static long newPrimaryId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0); // 0 is what a standby sends before it has followed anyone
+        return id;
+    }
+
+    // Forgets changes up to and including the given sequence (call while holding the lock)
+    private void dropThrough(long sequence) {
+        while (!unacked.isEmpty() && unacked.peekFirst().getSequence() <= sequence) {
+            unacked.removeFirst();
+        }
+        Iterator<Mutation> it = pending.iterator();
+        while (it.hasNext() && it.next().getSequence() <= sequence) {
+            it.remove();
+        }
+        trimmedThrough = Math.max(trimmedThrough, sequence);
+    }
+}
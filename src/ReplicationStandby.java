@@ -0,0 +1,156 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.function.Function;
+
+/**
+ * The standby side of replication: follows a primary's changes and applies
+ * them to its own Inventory.
+ *
+ * On connecting it tells the primary which primary it followed and the last
+ * change it applied, so after a dropped connection it carries on where it
+ * stopped (a new standby gets a snapshot first). Changes it already has are
+ * skipped if they come again. If the primary is a different one (a restart or
+ * a failover), the standby's copy is cleared and rebuilt from its snapshot.
+ *
+ * Reports can run against the standby through {@link #read(Function)} so
+ * they don't load the primary. If the primary goes away, {@link #promote()}
+ * stops following it and hands back the inventory to run as the new primary.
+ * Holds on the primary are not copied, so after a failover every unit on
+ * hand is available again.
+ */
+public class ReplicationStandby {
+
+    private static final int ACK_EVERY = 256; // Changes applied between acks while the stream keeps coming
+    private static final long ACK_INTERVAL_MILLIS = 5; // Longest we go without acking while the stream keeps coming
+
+    private final Inventory inventory;
+    private final Object lock = new Object(); // Keeps reads from seeing a change half applied
+    private Socket socket;
+    private Thread follower;
+    private volatile long primaryId; // Id of the primary appliedSequence belongs to, 0 before the first snapshot
+    private volatile long appliedSequence;
+    private volatile long lagMillis; // How long the last change took to get here and be applied
+    private volatile boolean promoted;
+
+    /**
+     * Constructs a standby that will apply changes to the given (normally empty) inventory.
+     */
+    public ReplicationStandby(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * Connects to a primary on this machine and starts applying its changes in the background.
+     * Can be called again after the connection drops to pick up where it left off.
+     * @param port Port the primary listens on
+     */
+    public void connect(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        // Tell the primary where we are; it sends a snapshot first if it can't carry on from there
+        out.writeLong(primaryId);
+        out.writeLong(appliedSequence);
+        out.flush();
+        Socket connected = socket;
+        follower = new Thread(() -> follow(connected, in, out), "replication-standby");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * Drops the connection to the primary without taking over. Call connect again to carry on.
+     */
+    public void disconnect() throws IOException, InterruptedException {
+        if (socket != null) socket.close();
+        if (follower != null) follower.join();
+    }
+
+    /**
+     * Runs a read-only query against the standby's copy of the inventory.
+     * Changes are not applied while the query runs.
+     */
+    public <T> T read(Function<Inventory, T> query) {
+        synchronized (lock) {
+            return query.apply(inventory);
+        }
+    }
+
+    /**
+     * Gets the sequence number of the newest change applied.
+     */
+    public long getAppliedSequence() { return appliedSequence; }
+
+    /**
+     * Gets how many milliseconds behind the primary the last applied change was.
+     */
+    public long getLagMillis() { return lagMillis; }
+
+    /**
+     * Stops following the primary and hands back the inventory so it can take over.
+     */
+    public Inventory promote() throws IOException {
+        promoted = true;
+        if (socket != null) socket.close();
+        synchronized (lock) {
+            return inventory;
+        }
+    }
+
+    // Applies every item state in a snapshot, which brings us up to the snapshot's sequence.
+    // A snapshot from a different primary replaces everything we had from the old one
+    private void applySnapshot(DataInputStream in, Mutation header, long from) throws IOException {
+        synchronized (lock) {
+            if (from != primaryId) inventory.clear();
+            for (int i = 0; i < header.getQuantity(); i++) {
+                inventory.applyMutation(Mutation.readFrom(in));
+            }
+        }
+        // Only now that the snapshot is in do our sequence numbers belong to the new primary
+        appliedSequence = header.getSequence();
+        primaryId = from;
+    }
+
+    private void follow(Socket connected, DataInputStream in, DataOutputStream out) {
+        long ackedSequence = -1; // Last sequence we acknowledged on this connection
+        long lastAckMillis = System.currentTimeMillis();
+        try {
+            long from = in.readLong(); // The primary's id; a different one always starts with a snapshot
+            while (!promoted) {
+                Mutation mutation = Mutation.readFrom(in);
+                if (mutation.getType() == Mutation.Type.SNAPSHOT) {
+                    applySnapshot(in, mutation, from);
+                } else if (from == primaryId && mutation.getSequence() > appliedSequence) {
+                    // Changes we already have can come again after a reconnect, so only newer ones are applied
+                    synchronized (lock) {
+                        inventory.applyMutation(mutation);
+                    }
+                    appliedSequence = mutation.getSequence();
+                    lagMillis = System.currentTimeMillis() - mutation.getTimestamp();
+                }
+                // Acknowledge once we've caught up with what has arrived so far, and now and then
+                // while it keeps coming, so the primary can let go of its backlog under steady load
+                long now = System.currentTimeMillis();
+                if (appliedSequence != ackedSequence && (in.available() == 0
+                        || appliedSequence - ackedSequence >= ACK_EVERY || now - lastAckMillis >= ACK_INTERVAL_MILLIS)) {
+                    out.writeLong(appliedSequence);
+                    out.flush();
+                    ackedSequence = appliedSequence;
+                    lastAckMillis = now;
+                }
+            }
+        } catch (EOFException e) {
+            System.out.println("Replication: primary closed the stream");
+        } catch (IOException e) {
+            // Closing the socket ourselves (promote or disconnect) is expected
+            if (!promoted && !connected.isClosed()) System.out.println("Replication: lost the primary (" + e.getMessage() + ")");
+        }
+    }
+}
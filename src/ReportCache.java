@@ -0,0 +1,130 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Remembers report results so asking for the same report again is instant.
+ *
+ * Each entry is stored with the version of the data it was built from
+ * (a section, a category, or the whole inventory). The Inventory bumps
+ * those versions whenever it changes, so a lookup is just a map hit and a
+ * number comparison. Only the entries whose section or category actually
+ * changed have to be rebuilt.
+ *
+ * The cache is bounded by number of entries and by total weight (roughly
+ * rows or characters), and drops the least recently used entries first.
+ */
+public class ReportCache {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Access order, for LRU
+    private long totalWeight;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructs a cache.
+     * @param maxEntries Most entries kept
+     * @param maxWeight Most total weight kept
+     */
+    public ReportCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Gets a cached result, or builds and caches it if it's missing or out of date.
+     * @param query Which report
+     * @param parameter What the report is for (a section id, a day, ...), may be null
+     * @param version Current version of the data the report depends on
+     * @param compute Builds the report
+     * @param weigher Says how heavy a result is
+     * @return the report
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrCompute(String query, Object parameter, long version, Supplier<T> compute, ToIntFunction<T> weigher) {
+        Key key = new Key(query, parameter);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == version) {
+                hits++;
+                return (T) entry.value;
+            }
+            misses++;
+        }
+        // Build outside the lock so a slow report doesn't hold up lookups of other ones
+        T value = compute.get();
+        Entry entry = new Entry(version, value, weigher.applyAsInt(value));
+        synchronized (this) {
+            put(key, entry);
+        }
+        return value;
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    private void put(Key key, Entry entry) {
+        Entry old = entries.get(key);
+        // Another thread may have stored a newer build meanwhile; keep that one
+        if (old != null && old.version > entry.version) return;
+        entries.put(key, entry);
+        if (old != null) totalWeight -= old.weight;
+        totalWeight += entry.weight;
+        // Evict least recently used entries, but always keep the one just added
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalWeight > maxWeight) && entries.size() > 1) {
+            Map.Entry<Key, Entry> victim = eldest.next();
+            if (victim.getKey().equals(key)) continue;
+            totalWeight -= victim.getValue().weight;
+            eldest.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final Object value;
+        private final int weight;
+
+        Entry(long version, Object value, int weight) {
+            this.version = version;
+            this.value = value;
+            this.weight = Math.max(1, weight);
+        }
+    }
+
+    private static final class Key {
+        private final String query;
+        private final Object parameter;
+
+        Key(String query, Object parameter) {
+            this.query = query;
+            this.parameter = parameter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return query.equals(other.query) && Objects.equals(parameter, other.parameter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + Objects.hashCode(parameter);
+        }
+    }
+}
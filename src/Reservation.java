@@ -0,0 +1,58 @@
+import java.util.Map;
+
+/**
+ * A hold on some units of a product while an order is being picked.
+ * A reservation starts out HELD and ends exactly once: committed (sold),
+ * released (given back) or expired (its time ran out first).
+ */
+public class Reservation {
+
+    /**
+     * Where a reservation is in its life.
+     */
+    public enum Status { HELD, COMMITTED, RELEASED, EXPIRED }
+
+    private final long id;
+    private final Product product;
+    private final int quantity;
+    private final Map<ProductBatch, Integer> lots; // Units held per batch (empty for non-perishables)
+    private final long expiresAt; // Wall clock millis when the hold runs out
+    private Status status = Status.HELD;
+
+    /**
+     * Creates a hold. Only the ReservationManager makes these.
+     */
+    Reservation(long id, Product product, int quantity, Map<ProductBatch, Integer> lots, long expiresAt) {
+        this.id = id;
+        this.product = product;
+        this.quantity = quantity;
+        this.lots = lots;
+        this.expiresAt = expiresAt;
+    }
+
+    public long getId() { return id; }
+    public Product getProduct() { return product; }
+    public int getQuantity() { return quantity; }
+    public long getExpiresAt() { return expiresAt; }
+    public synchronized Status getStatus() { return status; }
+
+    Map<ProductBatch, Integer> getLots() { return lots; }
+
+    /**
+     * Moves a HELD reservation to its final status.
+     * Only the first caller wins, so a hold can't be both sold and given back.
+     *
+     * @param outcome the final status
+     * @return true if this call settled the reservation
+     */
+    synchronized boolean settle(Status outcome) {
+        if (status != Status.HELD) return false;
+        status = outcome;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation #" + id + ": " + quantity + " x " + product.getName() + " (" + getStatus() + ")";
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of stock that is on hold for orders.
+ *
+ * An order first reserves units (checked and held in one step), then either
+ * commits the hold when it is picked or releases it if it falls through.
+ * Holds that are never settled run out after their time-to-live and the
+ * units go back to being available. Only the product being reserved is
+ * locked, so orders for different products never wait on each other.
+ */
+public class ReservationManager {
+
+    public static final long TICK_MILLIS = 100;
+    public static final int WHEEL_SLOTS = 512;
+
+    private final Map<Long, Reservation> open = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final HoldTimingWheel wheel = new HoldTimingWheel(TICK_MILLIS, WHEEL_SLOTS, System.currentTimeMillis());
+
+    /**
+     * Holds units of a product for an order.
+     * @param product Product to hold
+     * @param quantity Units to hold
+     * @param ttlMillis How long the hold lasts before it runs out
+     * @return the reservation, or null if there isn't enough available stock
+     */
+    public Reservation reserve(Product product, int quantity, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        expireHolds(now);
+        Map<ProductBatch, Integer> lots = product.reserve(quantity);
+        if (lots == null) return null;
+        Reservation reservation = new Reservation(nextId.getAndIncrement(), product, quantity, lots, now + ttlMillis);
+        open.put(reservation.getId(), reservation);
+        wheel.schedule(reservation);
+        return reservation;
+    }
+
+    /**
+     * Sells the held units. Fails if the hold was already settled or has run out.
+     * @param id Reservation id
+     * @return true if the units were taken off the shelf
+     */
+    public boolean commit(long id) {
+        long now = System.currentTimeMillis();
+        expireHolds(now);
+        Reservation reservation = open.get(id);
+        if (reservation == null) return false;
+        if (now >= reservation.getExpiresAt()) {
+            // The wheel works in ticks, so make sure a late commit can't sneak in
+            expire(reservation);
+            return false;
+        }
+        if (!reservation.settle(Reservation.Status.COMMITTED)) return false;
+        open.remove(id);
+        reservation.getProduct().commitReservation(reservation.getLots(), reservation.getQuantity());
+        return true;
+    }
+
+    /**
+     * Gives the held units back.
+     * @param id Reservation id
+     * @return true if the hold was still open and is now released
+     */
+    public boolean release(long id) {
+        expireHolds(System.currentTimeMillis());
+        Reservation reservation = open.get(id);
+        if (reservation == null || !reservation.settle(Reservation.Status.RELEASED)) return false;
+        open.remove(id);
+        reservation.getProduct().releaseReservation(reservation.getLots(), reservation.getQuantity());
+        return true;
+    }
+
+    /**
+     * Looks up an open reservation.
+     */
+    public Reservation getReservation(long id) {
+        return open.get(id);
+    }
+
+    /**
+     * Gets how many holds are still open.
+     */
+    public int getOpenCount() {
+        return open.size();
+    }
+
+    /**
+     * Releases every hold whose time has run out.
+     * @param nowMillis Current wall clock time
+     * @return number of holds that expired
+     */
+    public int expireHolds(long nowMillis) {
+        int expired = 0;
+        for (Reservation reservation : wheel.advance(nowMillis)) {
+            if (expire(reservation)) expired++;
+        }
+        return expired;
+    }
+
+    private boolean expire(Reservation reservation) {
+        if (!reservation.settle(Reservation.Status.EXPIRED)) return false;
+        open.remove(reservation.getId());
+        reservation.getProduct().releaseReservation(reservation.getLots(), reservation.getQuantity());
+        return true;
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps a short history of stock movements, per product, per section and per manager.
+ *
+ * Every change is written into a minute, an hour and a day ring at the same
+ * time, so the coarser views are always rolled up and ready to query. Each
+ * ring has a fixed number of buckets, so the history uses bounded memory
+ * for as long as the program runs. Product histories keep a shorter window
+ * than section and manager ones since there are far more products.
+ *
+ * Product series are kept in an array indexed by the name's id in
+ * SymbolTable.NAMES, so recording a movement doesn't build a key string.
+ */
+public class StockHistory {
+
+    /**
+     * Bucket widths kept for every series.
+     */
+    public enum Resolution {
+        MINUTE(60_000L), HOUR(3_600_000L), DAY(86_400_000L);
+
+        private final long millis;
+
+        Resolution(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    /**
+     * What a series is keyed by.
+     */
+    public enum Dimension { SKU, SECTION, MANAGER }
+
+    /**
+     * Which numbers to read back: units added, units removed, added minus removed,
+     * or units sold (removals that were orders, not write-offs or adjustments).
+     */
+    public enum Measure { ADDED, REMOVED, NET, SOLD }
+
+    // Buckets kept per resolution (minute, hour, day)
+    private static final int[] SKU_CAPACITY = { 60, 48, 90 };            // last hour, 2 days, ~3 months
+    private static final int[] GROUP_CAPACITY = { 1440, 24 * 14, 400 };  // last day, 2 weeks, ~13 months
+
+    private final Map<Dimension, Map<String, TimeSeriesRing[]>> series = new ConcurrentHashMap<>(); // Sections and managers
+    private volatile AtomicReferenceArray<TimeSeriesRing[]> skuSeries = new AtomicReferenceArray<>(1024); // Index is the name id
+
+    /**
+     * Constructs an empty history.
+     */
+    public StockHistory() {
+        series.put(Dimension.SECTION, new ConcurrentHashMap<>());
+        series.put(Dimension.MANAGER, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Records a quantity change for a product and its section.
+     * @param nameId Id of the product's name in SymbolTable.NAMES
+     * @param section Section the product is in
+     * @param delta Positive for stock added, negative for stock removed
+     * @param timestampMillis When it happened
+     */
+    public void recordItem(int nameId, String section, int delta, long timestampMillis) {
+        if (delta == 0) return;
+        record(skuRings(nameId, true), delta, timestampMillis);
+        record(Dimension.SECTION, section, delta, timestampMillis);
+    }
+
+    /**
+     * Records units of a product sold to an order. They count as removed too,
+     * so don't also call recordItem for them.
+     */
+    public void recordSale(int nameId, String section, int units, long timestampMillis) {
+        if (units <= 0) return;
+        for (TimeSeriesRing ring : skuRings(nameId, true)) {
+            ring.recordSale(timestampMillis, units);
+        }
+        for (TimeSeriesRing ring : series.get(Dimension.SECTION).computeIfAbsent(section, k -> newRings(Dimension.SECTION))) {
+            ring.recordSale(timestampMillis, units);
+        }
+    }
+
+    /**
+     * Records a quantity change made by a manager.
+     */
+    public void recordManager(String manager, int delta, long timestampMillis) {
+        record(Dimension.MANAGER, manager, delta, timestampMillis);
+    }
+
+    /**
+     * Gets one value per bucket over a time range, oldest first.
+     * For example, units sold in Dairy per hour over the last week:
+     * <pre>
+     *     history.buckets(Dimension.SECTION, "Dairy", Resolution.HOUR, now - 7 * 86_400_000L, now, Measure.SOLD);
+     * </pre>
+     * Buckets that have rolled off the history read as 0.
+     */
+    public long[] buckets(Dimension dimension, String key, Resolution resolution, long fromMillis, long toMillis, Measure measure) {
+        return buckets(ringsFor(dimension, key), resolution, fromMillis, toMillis, measure);
+    }
+
+    /**
+     * Same as buckets(Dimension.SKU, ...), for a product's name id.
+     */
+    public long[] buckets(int nameId, Resolution resolution, long fromMillis, long toMillis, Measure measure) {
+        return buckets(skuRings(nameId, false), resolution, fromMillis, toMillis, measure);
+    }
+
+    /**
+     * Adds up a measure over a time range.
+     */
+    public long sum(Dimension dimension, String key, Resolution resolution, long fromMillis, long toMillis, Measure measure) {
+        TimeSeriesRing[] rings = ringsFor(dimension, key);
+        if (rings == null) return 0;
+        return rings[resolution.ordinal()].sum(fromMillis, toMillis, measure);
+    }
+
+    /**
+     * Same as sum(Dimension.SKU, ...), for a product's name id.
+     */
+    public long sum(int nameId, Resolution resolution, long fromMillis, long toMillis, Measure measure) {
+        TimeSeriesRing[] rings = skuRings(nameId, false);
+        if (rings == null) return 0;
+        return rings[resolution.ordinal()].sum(fromMillis, toMillis, measure);
+    }
+
+    private long[] buckets(TimeSeriesRing[] rings, Resolution resolution, long fromMillis, long toMillis, Measure measure) {
+        if (rings == null) {
+            int count = (int) Math.max(0, toMillis / resolution.getMillis() - fromMillis / resolution.getMillis() + 1);
+            return new long[count];
+        }
+        return rings[resolution.ordinal()].buckets(fromMillis, toMillis, measure);
+    }
+
+    private void record(Dimension dimension, String key, int delta, long timestampMillis) {
+        if (delta == 0) return;
+        record(series.get(dimension).computeIfAbsent(key, k -> newRings(dimension)), delta, timestampMillis);
+    }
+
+    private void record(TimeSeriesRing[] rings, int delta, long timestampMillis) {
+        for (TimeSeriesRing ring : rings) {
+            ring.record(timestampMillis, delta);
+        }
+    }
+
+    // Product names are looked up in the dictionary; unknown names have no history
+    private TimeSeriesRing[] ringsFor(Dimension dimension, String key) {
+        if (dimension != Dimension.SKU) return series.get(dimension).get(key);
+        int nameId = SymbolTable.NAMES.idOf(key.toLowerCase());
+        return nameId < 0 ? null : skuRings(nameId, false);
+    }
+
+    // Gets a product's rings, making them (and growing the array) if asked to
+    private TimeSeriesRing[] skuRings(int nameId, boolean create) {
+        AtomicReferenceArray<TimeSeriesRing[]> table = skuSeries;
+        TimeSeriesRing[] rings = nameId < table.length() ? table.get(nameId) : null;
+        if (rings != null || !create) return rings;
+        synchronized (this) {
+            table = skuSeries;
+            if (nameId >= table.length()) {
+                AtomicReferenceArray<TimeSeriesRing[]> grown = new AtomicReferenceArray<>(Math.max(nameId + 1, table.length() * 2));
+                for (int i = 0; i < table.length(); i++) {
+                    grown.set(i, table.get(i));
+                }
+                skuSeries = grown;
+                table = grown;
+            }
+            rings = table.get(nameId);
+            if (rings == null) {
+                rings = newRings(Dimension.SKU);
+                table.set(nameId, rings);
+            }
+            return rings;
+        }
+    }
+
+    private TimeSeriesRing[] newRings(Dimension dimension) {
+        int[] capacity = dimension == Dimension.SKU ? SKU_CAPACITY : GROUP_CAPACITY;
+        Resolution[] resolutions = Resolution.values();
+        TimeSeriesRing[] rings = new TimeSeriesRing[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            rings[i] = new TimeSeriesRing(resolutions[i].getMillis(), capacity[i]);
+        }
+        return rings;
+    }
+}
@@ -0,0 +1,67 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * The store's idea of what day it is, shared by everything that checks expiry.
+ *
+ * LocalDate.now() reads the system clock and time zone every time it is
+ * called. Expiry only changes once a day, so the clock works the day out
+ * once, remembers when the next day starts, and after that each call is
+ * just a time comparison. Days are epoch days (days since 1970-01-01),
+ * so checking a date against today is a single int comparison.
+ *
+ * For replays and tests the day can be pinned with {@link #setFixedDate(LocalDate)}.
+ */
+public final class StoreClock {
+
+    private static volatile int today;
+    private static volatile LocalDate todayDate;
+    private static volatile long nextDayStartMillis; // When the cached day runs out
+    private static volatile boolean fixed;
+
+    private StoreClock() {
+    }
+
+    /**
+     * Gets today as an epoch day.
+     */
+    public static int today() {
+        if (!fixed && System.currentTimeMillis() >= nextDayStartMillis) tick();
+        return today;
+    }
+
+    /**
+     * Gets today as a LocalDate.
+     */
+    public static LocalDate todayDate() {
+        if (!fixed && System.currentTimeMillis() >= nextDayStartMillis) tick();
+        return todayDate;
+    }
+
+    /**
+     * Pins the clock to a given day until {@link #useSystemClock()} is called.
+     */
+    public static synchronized void setFixedDate(LocalDate date) {
+        todayDate = date;
+        today = (int) date.toEpochDay();
+        fixed = true;
+    }
+
+    /**
+     * Goes back to following the system clock.
+     */
+    public static synchronized void useSystemClock() {
+        fixed = false;
+        nextDayStartMillis = 0;
+    }
+
+    // Works out the day from the system clock and when it ends
+    private static synchronized void tick() {
+        if (fixed || System.currentTimeMillis() < nextDayStartMillis) return;
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate date = LocalDate.now(zone);
+        todayDate = date;
+        today = (int) date.toEpochDay();
+        nextDayStartMillis = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary that gives each distinct string a small int id.
+ *
+ * Millions of products share a few dozen sections and categories, so instead
+ * of every product holding its own copy of "Dairy" it holds the id, and the
+ * string is kept here once. Ids start at 0 and have no gaps, so they can be
+ * used directly as array indexes.
+ *
+ * Example:
+ * <pre>
+ *     int dairy = SymbolTable.SECTIONS.intern("Dairy");
+ *     String name = SymbolTable.SECTIONS.nameOf(dairy); // "Dairy"
+ * </pre>
+ */
+public class SymbolTable {
+
+    public static final SymbolTable SECTIONS = new SymbolTable(); // Store sections
+    public static final SymbolTable CATEGORIES = new SymbolTable(); // Product categories
+    public static final SymbolTable NAMES = new SymbolTable(); // Lower case product names used for lookups
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile int size;
+
+    /**
+     * Gets the id for a string, adding it to the dictionary if it's new.
+     */
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) return id;
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = value;
+            names = current;
+            id = size;
+            size = id + 1;
+            ids.put(value, id); // Published last, so anyone who sees the id also sees the string
+            return id;
+        }
+    }
+
+    /**
+     * Gets the id for a string without adding it.
+     * @return the id, or -1 if the string isn't in the dictionary
+     */
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the string for an id.
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets how many strings are in the dictionary. Ids run from 0 to size - 1.
+     */
+    public int size() {
+        return size;
+    }
+}
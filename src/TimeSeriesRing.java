@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * A fixed-size ring of time buckets that all have the same width.
+ *
+ * The data is stored column by column (bucket number, units added, units
+ * removed, units sold) in plain int arrays. Sold units are also counted as
+ * removed; the separate column lets callers tell sales from write-offs. Once the ring is full the oldest bucket is
+ * reused, so memory never grows no matter how long the store runs.
+ */
+public class TimeSeriesRing {
+
+    private final long bucketMillis;
+    private final int[] bucketNumber; // Which bucket (time / width) each slot currently holds
+    private final int[] added;
+    private final int[] removed;
+    private final int[] sold;
+
+    /**
+     * Constructs an empty ring.
+     * @param bucketMillis Width of one bucket
+     * @param capacity Number of buckets kept
+     */
+    public TimeSeriesRing(long bucketMillis, int capacity) {
+        this.bucketMillis = bucketMillis;
+        this.bucketNumber = new int[capacity];
+        this.added = new int[capacity];
+        this.removed = new int[capacity];
+        this.sold = new int[capacity];
+        Arrays.fill(bucketNumber, -1);
+    }
+
+    /**
+     * Adds a quantity change to the bucket it falls in.
+     * Changes older than anything the ring still holds are dropped.
+     *
+     * @param timestampMillis When the change happened
+     * @param delta Positive for stock added, negative for stock removed
+     */
+    public synchronized void record(long timestampMillis, int delta) {
+        int slot = slotFor(timestampMillis);
+        if (slot < 0) return;
+        if (delta >= 0) added[slot] += delta;
+        else removed[slot] -= delta;
+    }
+
+    /**
+     * Adds units sold to the bucket they fall in. They count as removed too.
+     */
+    public synchronized void recordSale(long timestampMillis, int units) {
+        int slot = slotFor(timestampMillis);
+        if (slot < 0) return;
+        removed[slot] += units;
+        sold[slot] += units;
+    }
+
+    // Gets the slot for a time, clearing it if it still holds an older bucket (-1 if the time is too old)
+    private int slotFor(long timestampMillis) {
+        int bucket = bucketOf(timestampMillis);
+        int slot = bucket % bucketNumber.length;
+        if (bucketNumber[slot] != bucket) {
+            if (bucketNumber[slot] > bucket) return -1; // Too old, that slot has already moved on
+            bucketNumber[slot] = bucket;
+            added[slot] = 0;
+            removed[slot] = 0;
+            sold[slot] = 0;
+        }
+        return slot;
+    }
+
+    /**
+     * Gets one value per bucket between two times (both ends included).
+     * Buckets with no data, or that have already rolled off the ring, read as 0.
+     *
+     * @param fromMillis Start of the range
+     * @param toMillis End of the range
+     * @param measure Which column to read
+     * @return values in time order, oldest first
+     */
+    public synchronized long[] buckets(long fromMillis, long toMillis, StockHistory.Measure measure) {
+        int first = bucketOf(fromMillis);
+        int last = bucketOf(toMillis);
+        if (last < first) return new long[0];
+        long[] values = new long[last - first + 1];
+        // Only the newest `capacity` buckets can still be on the ring
+        int oldest = Math.max(first, last - bucketNumber.length + 1);
+        for (int bucket = oldest; bucket <= last; bucket++) {
+            int slot = bucket % bucketNumber.length;
+            if (bucketNumber[slot] == bucket) {
+                values[bucket - first] = valueAt(slot, measure);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adds up a column over a time range (both ends included).
+     */
+    public long sum(long fromMillis, long toMillis, StockHistory.Measure measure) {
+        long total = 0;
+        for (long value : buckets(fromMillis, toMillis, measure)) {
+            total += value;
+        }
+        return total;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    private long valueAt(int slot, StockHistory.Measure measure) {
+        switch (measure) {
+            case ADDED: return added[slot];
+            case REMOVED: return removed[slot];
+            case SOLD: return sold[slot];
+            default: return (long) added[slot] - removed[slot];
+        }
+    }
+
+    private int bucketOf(long timestampMillis) {
+        return (int) (timestampMillis / bucketMillis);
+    }
+}
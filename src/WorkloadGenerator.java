@@ -0,0 +1,285 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Makes up catalogs and order traffic for load and soak testing.
+ *
+ * Everything comes from a seed, so the same settings always produce the same
+ * catalog and the same orders. Expiry dates are counted from a base day,
+ * which is today unless {@link #setToday(LocalDate)} is called; set it to get
+ * identical output on different days. Each product is built from its own number and
+ * the seed, which means the generator never has to keep the catalog in memory
+ * and can produce millions of products just as easily as nine.
+ *
+ * Order popularity follows a Zipf curve: a few products get most of the
+ * orders and a long tail gets very few, like a real store.
+ */
+public class WorkloadGenerator {
+
+    private static final String[] SECTION_NAMES = {
+            "Dairy", "Cereals & Snacks", "Vegetables & Fruits", "Electronics", "Clothing", "Toys"
+    };
+
+    private final long seed;
+    private int productCount = 1000;
+    private int sectionCount = SECTION_NAMES.length;
+    private int categoriesPerSection = 4;
+    private double perishableRatio = 0.3;
+    private int maxBatchesPerProduct = 3;
+    private int minShelfLifeDays = 2;
+    private int maxShelfLifeDays = 30;
+    private double expiredBatchRatio = 0.02; // Some stock is already past its date, like on a real shelf
+    private int maxStartingQuantity = 50;
+    private double zipfExponent = 1.0;
+    private double restockRatio = 0.1; // Share of the traffic that is restocks instead of orders
+    private int maxOrderQuantity = 5;
+    private LocalDate today = StoreClock.todayDate(); // Base day for expiry dates, see setToday
+
+    /**
+     * Constructs a generator.
+     * @param seed Seed for every random choice
+     */
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setProductCount(int productCount) { this.productCount = productCount; }
+    public void setSectionCount(int sectionCount) { this.sectionCount = sectionCount; }
+    public void setCategoriesPerSection(int categoriesPerSection) { this.categoriesPerSection = categoriesPerSection; }
+    public void setPerishableRatio(double perishableRatio) { this.perishableRatio = perishableRatio; }
+    public void setMaxBatchesPerProduct(int maxBatchesPerProduct) { this.maxBatchesPerProduct = maxBatchesPerProduct; }
+    public void setShelfLifeDays(int minDays, int maxDays) { this.minShelfLifeDays = minDays; this.maxShelfLifeDays = maxDays; }
+    public void setExpiredBatchRatio(double expiredBatchRatio) { this.expiredBatchRatio = expiredBatchRatio; }
+    public void setMaxStartingQuantity(int maxStartingQuantity) { this.maxStartingQuantity = maxStartingQuantity; }
+    public void setZipfExponent(double zipfExponent) { this.zipfExponent = zipfExponent; }
+    public void setRestockRatio(double restockRatio) { this.restockRatio = restockRatio; }
+    public void setMaxOrderQuantity(int maxOrderQuantity) { this.maxOrderQuantity = maxOrderQuantity; }
+    /**
+     * Sets the day expiry dates are counted from. Needed for the same catalog and script on any day.
+     */
+    public void setToday(LocalDate today) { this.today = today; }
+
+    /**
+     * Adds the whole generated catalog straight into an inventory.
+     */
+    public void populate(Inventory inventory) {
+        for (int i = 0; i < productCount; i++) {
+            inventory.importItem(buildProduct(i));
+        }
+    }
+
+    /**
+     * Writes the generated catalog in the same format saveInventory writes
+     * (dictionaries first, then one row per batch for perishables).
+     */
+    public void writeCatalog(String filename) throws IOException {
+        // Every section and category goes in the dictionaries before the first row,
+        // so the products can still be built one at a time
+        for (int section = 0; section < sectionCount; section++) {
+            SymbolTable.SECTIONS.intern(sectionName(section));
+            for (int category = 1; category <= categoriesPerSection; category++) {
+                SymbolTable.CATEGORIES.intern(categoryName(section, category));
+            }
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+            Inventory.writeFileHeader(writer);
+            for (int i = 0; i < productCount; i++) {
+                Inventory.writeItem(writer, buildProduct(i));
+            }
+        }
+    }
+
+    /**
+     * Writes a command script for BatchRunner: pins the day, loads the catalog file, then runs
+     * a stream of orders mixed with restocks.
+     * @param filename Script to write
+     * @param catalogFile Catalog the script should load first
+     * @param commandCount Number of orders and restocks to write
+     * @param manager Manager the script logs in as
+     */
+    public void writeTrafficScript(String filename, String catalogFile, long commandCount, String manager) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        ZipfSampler popularity = new ZipfSampler(productCount, zipfExponent);
+        long step = popularityStep();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+            writer.write("# Generated with seed " + seed + ", " + productCount + " products");
+            writer.newLine();
+            writer.write("date," + today); // Replays see the same day the dates were generated for
+            writer.newLine();
+            writer.write("login," + manager);
+            writer.newLine();
+            writer.write("load," + catalogFile);
+            writer.newLine();
+            for (long n = 0; n < commandCount; n++) {
+                writer.write(nextCommand(random, popularity, step));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Runs a stream of orders and restocks straight against an inventory.
+     * @return number of orders that were filled
+     */
+    public long runTraffic(Inventory inventory, long commandCount, String manager) throws ProductNotFound {
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        ZipfSampler popularity = new ZipfSampler(productCount, zipfExponent);
+        long step = popularityStep();
+        long filled = 0;
+        for (long n = 0; n < commandCount; n++) {
+            int index = productForRank(popularity.sample(random), step);
+            if (random.nextDouble() < restockRatio) {
+                Product product = buildProduct(index);
+                int quantity = 1 + random.nextInt(maxStartingQuantity);
+                if (product.isPerishable()) {
+                    inventory.addOrUpdatePerishable(product.getName(), quantity, freshDate(random), product.getSection());
+                } else {
+                    inventory.updateStock(product.getName(), quantity);
+                }
+                inventory.recordManagerContribution(manager, product.getSection(), quantity);
+            } else if (inventory.fulfillOrder((1 + random.nextInt(maxOrderQuantity)) + " " + productName(index), manager)) {
+                filled++;
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * Builds product number i. The same number always gives the same product.
+     */
+    public Product buildProduct(int index) {
+        SplittableRandom random = new SplittableRandom(seed * 31 + index);
+        int section = random.nextInt(sectionCount);
+        String sectionName = sectionName(section);
+        String category = categoryName(section, 1 + random.nextInt(categoriesPerSection));
+        boolean perishable = random.nextDouble() < perishableRatio;
+        if (!perishable) {
+            return new Product(productName(index), category, random.nextInt(maxStartingQuantity + 1), null, sectionName, false);
+        }
+        Product product = new Product(productName(index), category, 1 + random.nextInt(maxStartingQuantity), batchDate(random), sectionName, true);
+        int extraBatches = random.nextInt(maxBatchesPerProduct);
+        for (int b = 0; b < extraBatches; b++) {
+            product.addOrUpdateBatch(1 + random.nextInt(maxStartingQuantity), batchDate(random));
+        }
+        return product;
+    }
+
+    private String nextCommand(SplittableRandom random, ZipfSampler popularity, long step) {
+        int index = productForRank(popularity.sample(random), step);
+        if (random.nextDouble() < restockRatio) {
+            Product product = buildProduct(index);
+            String expiration = product.isPerishable() ? freshDate(random).toString() : "N/A";
+            return "add," + product.getName() + "," + product.getCategory() + "," + product.getSection() + ","
+                    + (1 + random.nextInt(maxStartingQuantity)) + "," + expiration;
+        }
+        return "order," + (1 + random.nextInt(maxOrderQuantity)) + " " + productName(index);
+    }
+
+    // Spreads popularity over the catalog so the best sellers aren't all in one section
+    private int productForRank(long rank, long step) {
+        return (int) (((rank - 1) * step) % productCount);
+    }
+
+    // A stride that visits every product exactly once as the rank goes from 1 to n
+    private long popularityStep() {
+        long step = Math.max(1, 2_654_435_761L % productCount);
+        while (gcd(step, productCount) != 1) step++;
+        return step;
+    }
+
+    private LocalDate batchDate(SplittableRandom random) {
+        if (random.nextDouble() < expiredBatchRatio) {
+            return today.minusDays(1 + random.nextInt(5));
+        }
+        return freshDate(random);
+    }
+
+    private LocalDate freshDate(SplittableRandom random) {
+        return today.plusDays(minShelfLifeDays + random.nextInt(maxShelfLifeDays - minShelfLifeDays + 1));
+    }
+
+    private String sectionName(int section) {
+        return section < SECTION_NAMES.length ? SECTION_NAMES[section] : "Section " + (section + 1);
+    }
+
+    private String categoryName(int section, int category) {
+        return sectionName(section) + " " + category;
+    }
+
+    private static String productName(int index) {
+        return "Item " + index;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Draws ranks 1..n from a Zipf distribution using rejection-inversion
+     * (Hormann and Derflinger), which takes constant time and memory
+     * no matter how many products there are.
+     */
+    static class ZipfSampler {
+        private final long n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        ZipfSampler(long n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1.0;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+        }
+
+        long sample(SplittableRandom random) {
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                long k = (long) (x + 0.5);
+                if (k < 1) k = 1;
+                else if (k > n) k = n;
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1.0 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = x * (1.0 - exponent);
+            if (t < -1.0) t = -1.0;
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log(1 + x) / x, safe near 0
+        private static double helper1(double x) {
+            if (Math.abs(x) > 1e-8) return Math.log1p(x) / x;
+            return 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        // (exp(x) - 1) / x, safe near 0
+        private static double helper2(double x) {
+            if (Math.abs(x) > 1e-8) return Math.expm1(x) / x;
+            return 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+        }
+    }
+}